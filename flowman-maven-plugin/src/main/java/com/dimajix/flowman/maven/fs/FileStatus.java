@@ -0,0 +1,31 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.fs;
+
+import lombok.Value;
+
+
+@Value
+public class FileStatus {
+    // The name of the file or directory without its parent directory
+    String name;
+    boolean directory;
+    // The size of a file, or the total size of all files of a directory (if known)
+    long size;
+    // The modification time in milliseconds, for directories the latest modification of any file (if known)
+    long modificationTime;
+}
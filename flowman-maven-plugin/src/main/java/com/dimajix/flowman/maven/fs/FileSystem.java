@@ -19,10 +19,14 @@ package com.dimajix.flowman.maven.fs;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.ServiceLoader;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import lombok.val;
@@ -49,5 +53,56 @@ public interface FileSystem {
     String getScheme();
     void put(URI target, File source) throws IOException;
     void putAll(URI target, File sources) throws IOException;
+
+    /**
+     * Synchronizes the target directory with a local directory. Only new or changed files are uploaded, and
+     * optionally all files in the target which do not exist in the source directory are deleted. File systems
+     * which cannot detect changes simply copy all files. Returns the number of bytes transferred.
+     */
+    default long sync(URI target, File sources, boolean deleteExtraneous) throws IOException {
+        putAll(target, sources);
+        try (Stream<Path> stream = Files.walk(sources.toPath())) {
+            return stream.map(Path::toFile).filter(File::isFile).mapToLong(File::length).sum();
+        }
+    }
+
     void delete(URI target, boolean recursive) throws IOException;
+
+    /**
+     * Returns the status of a single file, or null if the file does not exist
+     */
+    default FileStatus stat(URI file) throws IOException {
+        throw new UnsupportedOperationException("Retrieving the status of files is not supported by file system '" + getScheme() + "'");
+    }
+
+    /**
+     * Returns the SHA-256 checksum of a file as stored in its sidecar file {@code <file>.sha256}, or null if no
+     * checksum is available. The sidecar uses the format of the "sha256sum" utility, i.e. {@code <checksum>  <file name>}.
+     */
+    default String checksum(URI file) throws IOException {
+        throw new UnsupportedOperationException("Retrieving checksums is not supported by file system '" + getScheme() + "'");
+    }
+
+    /**
+     * Returns the status of all files and directories directly contained in a directory. An empty list is returned
+     * if the directory does not exist.
+     */
+    default List<FileStatus> list(URI directory) throws IOException {
+        throw new UnsupportedOperationException("Listing directories is not supported by file system '" + getScheme() + "'");
+    }
+
+    /**
+     * Atomically points a link to a target, which is specified relative to the parent directory of the link. File
+     * systems without support for links store the target in a small pointer file, which is replaced as a whole.
+     */
+    default void link(URI link, String target) throws IOException {
+        val file = File.createTempFile("flowman-link", ".txt");
+        try {
+            Files.write(file.toPath(), target.getBytes(StandardCharsets.UTF_8));
+            put(link, file);
+        }
+        finally {
+            file.delete();
+        }
+    }
 }
@@ -20,16 +20,107 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import lombok.val;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import com.dimajix.flowman.maven.plugin.util.Checksums;
 
 
+/**
+ * File system for local and mounted directories. Directory trees are copied by multiple threads in parallel, since
+ * the latency of network file systems like NFS usually dominates the time for copying many small files. The
+ * number of threads can be configured via the system property "flowman.fs.threads". With "flowman.fs.hardLinks",
+ * files are hard linked instead of copied where possible.
+ */
 public class LocalFileSystem implements FileSystem {
+    private final boolean hardLinks;
+
+    public LocalFileSystem() {
+        this(Boolean.getBoolean("flowman.fs.hardLinks"));
+    }
+
+    LocalFileSystem(boolean hardLinks) {
+        this.hardLinks = hardLinks;
+    }
+
+    @FunctionalInterface
+    private interface IOTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * Executes copy tasks on a bounded thread pool, while limiting the number of pending tasks
+     */
+    private static class ParallelCopier implements AutoCloseable {
+        private final int threads = Integer.getInteger("flowman.fs.threads", 8);
+        private final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        private final Semaphore pending = new Semaphore(threads * 16);
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        void submit(IOTask task) throws IOException {
+            try {
+                pending.acquire();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while copying files", ex);
+            }
+            futures.add(executor.submit(() -> {
+                try {
+                    task.run();
+                    return null;
+                }
+                finally {
+                    pending.release();
+                }
+            }));
+        }
+
+        void await() throws IOException {
+            try {
+                for (Future<?> future : futures)
+                    future.get();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while copying files", ex);
+            }
+            catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException)
+                    throw (IOException)ex.getCause();
+                throw new IOException(ex.getCause());
+            }
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+
     @Override
     public String getScheme() {
         return "file";
@@ -39,39 +130,204 @@ public class LocalFileSystem implements FileSystem {
     public void put(URI target, File source) throws IOException {
         val path = Paths.get(normalizeUri(target));
         Files.createDirectories(path.getParent());
-        Files.copy(source.toPath(), path, REPLACE_EXISTING);
+        copyFile(source.toPath(), path);
     }
 
     @Override
     public void putAll(URI target, File sources) throws IOException {
-        val path = Paths.get(normalizeUri(target));
-        Files.createDirectories(path);
-        for (val src : Files.list(sources.toPath()).collect(Collectors.toList())) {
-            val tgt = path.resolve(src.getFileName().toString());
-            if (Files.isDirectory(src)) {
-                putAll(tgt.toUri(), src.toFile());
-            }
-            else {
-                Files.copy(src, tgt, REPLACE_EXISTING);
-            }
+        val root = Paths.get(normalizeUri(target));
+        val sourceRoot = sources.toPath();
+        try (val copier = new ParallelCopier()) {
+            Files.walkFileTree(sourceRoot, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Files.createDirectories(root.resolve(sourceRoot.relativize(dir).toString()));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    val tgt = root.resolve(sourceRoot.relativize(file).toString());
+                    copier.submit(() -> copyFile(file, tgt));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            copier.await();
         }
     }
 
+    @Override
+    public long sync(URI target, File sources, boolean deleteExtraneous) throws IOException {
+        val root = Paths.get(normalizeUri(target));
+        val sourceRoot = sources.toPath();
+        val bytes = new AtomicLong();
+
+        // Copy all new or changed files, comparing their size first and then their content
+        val sourceFiles = new HashSet<Path>();
+        try (val copier = new ParallelCopier()) {
+            Files.walkFileTree(sourceRoot, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    val relativePath = sourceRoot.relativize(dir);
+                    sourceFiles.add(relativePath);
+                    Files.createDirectories(root.resolve(relativePath.toString()));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    val relativePath = sourceRoot.relativize(file);
+                    sourceFiles.add(relativePath);
+                    val tgt = root.resolve(relativePath.toString());
+                    copier.submit(() -> {
+                        if (!Files.isRegularFile(tgt) || Files.size(file) != Files.size(tgt) || !Checksums.sha256(file.toFile()).equals(Checksums.sha256(tgt.toFile()))) {
+                            copyFile(file, tgt);
+                            bytes.addAndGet(attrs.size());
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            copier.await();
+        }
+
+        // Delete all files which do not exist in the source. Children of extraneous directories are also extraneous,
+        // therefore they are already deleted when the directory itself is deleted.
+        if (deleteExtraneous) {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (!sourceFiles.contains(root.relativize(file)))
+                        Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null)
+                        throw exc;
+                    if (!sourceFiles.contains(root.relativize(dir)))
+                        Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return bytes.get();
+    }
+
     @Override
     public void delete(URI target, boolean recursive) throws IOException {
         val path = Paths.get(normalizeUri(target));
-        if (Files.exists(path)) {
-            if (Files.isDirectory(path)) {
-                if (recursive) {
-                    for (val src : Files.list(path).collect(Collectors.toList())) {
-                        delete(src.toUri(), recursive);
-                    }
+        if (Files.isDirectory(path) && recursive) {
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null)
+                        throw exc;
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
                 }
+            });
+        }
+        else {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Override
+    public FileStatus stat(URI file) throws IOException {
+        val path = Paths.get(normalizeUri(file));
+        if (!Files.exists(path))
+            return null;
+        val attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        return new FileStatus(path.getFileName().toString(), attrs.isDirectory(), attrs.size(), attrs.lastModifiedTime().toMillis());
+    }
+
+    @Override
+    public String checksum(URI file) throws IOException {
+        val path = Paths.get(normalizeUri(file));
+        val sidecar = path.resolveSibling(path.getFileName() + ".sha256");
+        if (!Files.isRegularFile(sidecar))
+            return null;
+        val content = new String(Files.readAllBytes(sidecar), StandardCharsets.UTF_8).trim();
+        return content.isEmpty() ? null : content.split("\\s+")[0];
+    }
+
+    @Override
+    public List<FileStatus> list(URI directory) throws IOException {
+        val path = Paths.get(normalizeUri(directory));
+        if (!Files.isDirectory(path))
+            return new ArrayList<>();
+        try (Stream<Path> stream = Files.list(path)) {
+            val result = new ArrayList<FileStatus>();
+            for (Path child : stream.sorted().collect(Collectors.toList())) {
+                val attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                result.add(new FileStatus(child.getFileName().toString(), attrs.isDirectory(), attrs.size(), attrs.lastModifiedTime().toMillis()));
             }
-            Files.delete(path);
+            return result;
         }
     }
 
+    /**
+     * Creates a symbolic link, which replaces any existing link atomically via a rename
+     */
+    @Override
+    public void link(URI link, String target) throws IOException {
+        val path = Paths.get(normalizeUri(link));
+        Files.createDirectories(path.getParent());
+        val tmp = path.resolveSibling(path.getFileName() + ".tmp-" + UUID.randomUUID());
+        Files.createSymbolicLink(tmp, Paths.get(target));
+        try {
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Copies a single file via FileChannel.transferTo, which lets the operating system copy the data directly. The
+     * target is always removed first, such that a previous hard link to the source is never overwritten in place.
+     * POSIX permissions of the source are retained.
+     */
+    private void copyFile(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        if (hardLinks) {
+            try {
+                createLink(target, source);
+                return;
+            }
+            catch (IOException | UnsupportedOperationException ex) {
+                // Fall back to copying, for example if source and target are on different file systems
+            }
+        }
+        try (val in = FileChannel.open(source, StandardOpenOption.READ);
+             val out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            val size = in.size();
+            long position = 0;
+            while (position < size) {
+                val count = in.transferTo(position, size - position, out);
+                // Nothing is transferred anymore if the source has been truncated in the meantime
+                if (count <= 0)
+                    throw new IOException("File '" + source + "' changed while copying it to '" + target + "'");
+                position += count;
+            }
+        }
+        // Channels create files with default permissions, therefore executable scripts would lose their mode
+        if (Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class))
+            Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+    }
+
+    void createLink(Path link, Path existing) throws IOException {
+        Files.createLink(link, existing);
+    }
+
     private URI normalizeUri(URI uri) throws IOException {
         try {
             return uri.getScheme() == null ? new URI("file:" + uri) : uri;
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import lombok.Value;
+import lombok.val;
+import lombok.var;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import com.dimajix.flowman.maven.plugin.util.Checksums;
+
+
+/**
+ * Executes commands in long living Flowman JVMs (daemons), which are reused by subsequent builds. Daemons are
+ * identified by a fingerprint of their JVM options, classpath, environment and working directory, such that a new
+ * daemon is started whenever any of these change. Multiple daemons with the same fingerprint are started when
+ * commands are executed in parallel, since each daemon executes only a single command at a time.
+ */
+public class DaemonClient {
+    private static final String STATE_FILE = "daemon.state";
+    private static final String LOCK_FILE = "daemon.lock";
+    private static final String LOG_FILE = "daemon.log";
+    private static final String ALLOW_SECURITY_MANAGER = "-Djava.security.manager=allow";
+    private static final long STARTUP_TIMEOUT = 120000;
+
+    @Value
+    private static class Connection {
+        Socket socket;
+        String token;
+    }
+
+    private final Log log;
+    private final File daemonDirectory;
+    private final int idleTimeout;
+
+    /**
+     * @param log the logger to use
+     * @param daemonDirectory the directory which contains the state of all daemons
+     * @param idleTimeout the number of minutes after which an idle daemon terminates itself
+     */
+    public DaemonClient(Log log, File daemonDirectory, int idleTimeout) {
+        this.log = log;
+        this.daemonDirectory = daemonDirectory;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Runs the main class within a daemon and returns its exit code. All output of the command is written to the
+     * given output stream.
+     *
+     * @param javaCommand the Java executable followed by all JVM options, but without the classpath
+     * @param classPath the classpath of the main class
+     * @param environment additional environment variables of the JVM
+     * @param workingDirectory the working directory of the JVM, may be null
+     * @param mainClass the class whose main method is executed
+     * @param args the arguments of the main method
+     * @param output the stream receiving the output of the command
+     */
+    public int run(List<String> javaCommand, String classPath, Map<String,String> environment, File workingDirectory, String mainClass, List<String> args, OutputStream output) throws MojoExecutionException {
+        val directory = new File(daemonDirectory, getFingerprint(javaCommand, classPath, environment, workingDirectory));
+        for (int slot = 0; ; ++slot) {
+            val slotDirectory = new File(directory, Integer.toString(slot));
+            try {
+                Files.createDirectories(slotDirectory.toPath());
+                try (val channel = FileChannel.open(new File(slotDirectory, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                     val lock = tryLock(channel)) {
+                    if (lock == null)
+                        continue;
+                    val daemon = connect(slotDirectory, javaCommand, classPath, environment, workingDirectory);
+                    return execute(daemon, mainClass, args, output);
+                }
+            }
+            catch (IOException ex) {
+                throw new MojoExecutionException("Error communicating with Flowman daemon in '" + slotDirectory + "'. Please see '" + new File(slotDirectory, LOG_FILE) + "' for details.", ex);
+            }
+        }
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        }
+        catch (OverlappingFileLockException ex) {
+            // Another thread of this JVM already uses this daemon
+            return null;
+        }
+    }
+
+    /**
+     * Connects to the daemon in the given directory, after starting it if it is not running yet
+     */
+    private Connection connect(File slotDirectory, List<String> javaCommand, String classPath, Map<String,String> environment, File workingDirectory) throws IOException, MojoExecutionException {
+        val stateFile = new File(slotDirectory, STATE_FILE);
+        var state = readState(stateFile);
+        if (state != null) {
+            val connection = tryConnect(state);
+            if (connection != null) {
+                log.info("Using Flowman daemon in '" + slotDirectory + "'");
+                return connection;
+            }
+        }
+
+        log.info("Starting Flowman daemon in '" + slotDirectory + "'");
+        state = startDaemon(slotDirectory, javaCommand, classPath, environment, workingDirectory);
+        if (!Boolean.parseBoolean(state.getProperty("exitTrap"))) {
+            // Java 18 and newer only allow installing a security manager when explicitly enabled
+            val command = new ArrayList<String>(javaCommand);
+            command.add(ALLOW_SECURITY_MANAGER);
+            state = startDaemon(slotDirectory, command, classPath, environment, workingDirectory);
+            if (!Boolean.parseBoolean(state.getProperty("exitTrap")))
+                throw new MojoExecutionException("Flowman daemon cannot trap System.exit. Please see '" + new File(slotDirectory, LOG_FILE) + "' for details.");
+        }
+        val connection = tryConnect(state);
+        if (connection == null)
+            throw new MojoExecutionException("Cannot connect to Flowman daemon. Please see '" + new File(slotDirectory, LOG_FILE) + "' for details.");
+        return connection;
+    }
+
+    private Properties startDaemon(File slotDirectory, List<String> javaCommand, String classPath, Map<String,String> environment, File workingDirectory) throws IOException, MojoExecutionException {
+        val stateFile = new File(slotDirectory, STATE_FILE);
+        Files.deleteIfExists(stateFile.toPath());
+
+        val command = new ArrayList<String>(javaCommand);
+        command.add("-classpath");
+        command.add(classPath + File.pathSeparator + getDaemonClassPath());
+        command.add(DaemonMain.class.getName());
+        command.add(stateFile.getAbsolutePath());
+        command.add(Long.toString(idleTimeout * 60L));
+
+        val builder = new ProcessBuilder(command);
+        builder.environment().putAll(environment);
+        if (workingDirectory != null)
+            builder.directory(workingDirectory);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(slotDirectory, LOG_FILE)));
+        val process = builder.start();
+        process.getOutputStream().close();
+
+        val deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+        while (!stateFile.exists()) {
+            if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+                process.destroyForcibly();
+                throw new MojoExecutionException("Flowman daemon failed to start. Please see '" + new File(slotDirectory, LOG_FILE) + "' for details.");
+            }
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+                throw new MojoExecutionException("Interrupted while starting Flowman daemon", ex);
+            }
+        }
+        return readState(stateFile);
+    }
+
+    private int execute(Connection connection, String mainClass, List<String> args, OutputStream output) throws IOException {
+        try (val s = connection.getSocket()) {
+            val out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            out.writeInt(DaemonMain.PROTOCOL_VERSION);
+            out.writeUTF(connection.getToken());
+            out.writeUTF(mainClass);
+            out.writeInt(args.size());
+            for (String arg : args)
+                out.writeUTF(arg);
+            out.flush();
+
+            val in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            val buffer = new byte[64 * 1024];
+            while (true) {
+                val type = in.readByte();
+                if (type == DaemonMain.OUTPUT) {
+                    var remaining = in.readInt();
+                    while (remaining > 0) {
+                        val n = Math.min(remaining, buffer.length);
+                        in.readFully(buffer, 0, n);
+                        output.write(buffer, 0, n);
+                        remaining -= n;
+                    }
+                    output.flush();
+                }
+                else if (type == DaemonMain.FAILURE) {
+                    log.error("Uncaught exception in '" + mainClass + "':\n" + in.readUTF());
+                }
+                else if (type == DaemonMain.EXIT) {
+                    return in.readInt();
+                }
+                else {
+                    throw new IOException("Unexpected message " + type + " from Flowman daemon");
+                }
+            }
+        }
+        catch (EOFException ex) {
+            throw new IOException("Flowman daemon terminated unexpectedly", ex);
+        }
+    }
+
+    private static Connection tryConnect(Properties state) {
+        try {
+            val socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(state.getProperty("port")));
+            return new Connection(socket, state.getProperty("token"));
+        }
+        catch (IOException | NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static Properties readState(File stateFile) throws IOException {
+        if (!stateFile.isFile())
+            return null;
+        val props = new Properties();
+        try (val in = new FileInputStream(stateFile)) {
+            props.load(in);
+        }
+        return props;
+    }
+
+    private static String getDaemonClassPath() throws MojoExecutionException {
+        try {
+            return new File(DaemonMain.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        }
+        catch (URISyntaxException ex) {
+            throw new MojoExecutionException("Cannot determine location of Flowman daemon", ex);
+        }
+    }
+
+    private static String getFingerprint(List<String> javaCommand, String classPath, Map<String,String> environment, File workingDirectory) throws MojoExecutionException {
+        val digest = Checksums.newDigest();
+        javaCommand.forEach(arg -> Checksums.update(digest, arg));
+        // Only use size and modification time of the classpath, since hashing a complete Spark classpath is expensive
+        val entries = new ArrayList<String>();
+        entries.add(getDaemonClassPath());
+        for (String entry : classPath.split(File.pathSeparator))
+            entries.add(entry);
+        for (String entry : entries) {
+            val file = new File(entry);
+            Checksums.update(digest, entry + ":" + file.length() + ":" + file.lastModified());
+        }
+        new TreeMap<>(environment).forEach((k, v) -> Checksums.update(digest, k + "=" + v));
+        Checksums.update(digest, workingDirectory != null ? workingDirectory.getAbsolutePath() : "");
+        return Checksums.toHex(digest.digest()).substring(0, 32);
+    }
+}
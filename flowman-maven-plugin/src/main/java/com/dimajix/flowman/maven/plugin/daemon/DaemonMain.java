@@ -0,0 +1,195 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.UUID;
+
+
+/**
+ * Entry point of a long living Flowman JVM, which executes commands sent by a {@link DaemonClient} one after
+ * another. This avoids starting a new JVM and loading all classes for every Flowman project to be tested.
+ *
+ * This class is executed within the classpath of Flowman and therefore must not depend on any classes other than
+ * those of the JDK.
+ */
+public final class DaemonMain {
+    static final int PROTOCOL_VERSION = 1;
+    static final byte OUTPUT = 1;
+    static final byte EXIT = 2;
+    static final byte FAILURE = 3;
+    // Stack traces are sent via writeUTF, which is limited to 64k bytes
+    private static final int MAX_FAILURE_LENGTH = 16 * 1024;
+    private static final int POLL_INTERVAL = 5000;
+
+    private static final Object lock = new Object();
+    private static final PrintStream stdout = new PrintStream(new FileOutputStream(FileDescriptor.out), true);
+    private static DataOutputStream client;
+
+    /**
+     * Forwards all output to the currently connected client, or to the original stdout when no client is connected
+     */
+    private static final class ClientOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (lock) {
+                if (client != null) {
+                    try {
+                        client.writeByte(OUTPUT);
+                        client.writeInt(len);
+                        client.write(b, off, len);
+                        return;
+                    }
+                    catch (IOException ex) {
+                        // The client has gone away, the command will still be completed
+                        client = null;
+                    }
+                }
+                stdout.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (lock) {
+                if (client != null) {
+                    try {
+                        client.flush();
+                    }
+                    catch (IOException ex) {
+                        client = null;
+                    }
+                }
+                stdout.flush();
+            }
+        }
+    }
+
+    private DaemonMain() {
+    }
+
+    /**
+     * @param args the state file to be created and the idle timeout in seconds
+     */
+    public static void main(String[] args) throws Exception {
+        File stateFile = new File(args[0]);
+        long idleTimeout = Long.parseLong(args[1]) * 1000;
+        // Newer JVMs require -Djava.security.manager=allow for trapping System.exit
+        boolean exitTrap = MainInvoker.installExitTrap();
+        if (!exitTrap)
+            stdout.println("Cannot install security manager for trapping System.exit");
+
+        PrintStream out = new PrintStream(new ClientOutputStream(), true);
+        System.setOut(out);
+        System.setErr(out);
+
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(POLL_INTERVAL);
+            String token = UUID.randomUUID().toString();
+            writeState(stateFile, server.getLocalPort(), token, exitTrap);
+            stdout.println("Flowman daemon listening on port " + server.getLocalPort());
+
+            long lastUse = System.currentTimeMillis();
+            // The daemon also terminates when its state file has been removed, for example by "mvn clean"
+            while (exitTrap && stateFile.exists() && System.currentTimeMillis() - lastUse < idleTimeout) {
+                try (Socket socket = server.accept()) {
+                    serve(socket, token);
+                }
+                catch (SocketTimeoutException ex) {
+                    continue;
+                }
+                catch (IOException ex) {
+                    ex.printStackTrace(stdout);
+                }
+                lastUse = System.currentTimeMillis();
+            }
+        }
+        stdout.println("Flowman daemon is shutting down");
+        System.exit(0);
+    }
+
+    private static void writeState(File stateFile, int port, String token, boolean exitTrap) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("port", Integer.toString(port));
+        props.setProperty("token", token);
+        props.setProperty("exitTrap", Boolean.toString(exitTrap));
+        File tmp = new File(stateFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            props.store(out, null);
+        }
+        Files.move(tmp.toPath(), stateFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void serve(Socket socket, String token) throws IOException {
+        socket.setSoTimeout(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (in.readInt() != PROTOCOL_VERSION || !token.equals(in.readUTF()))
+            return;
+        String mainClass = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; ++i)
+            args[i] = in.readUTF();
+
+        synchronized (lock) {
+            client = out;
+        }
+        MainInvoker.Result result;
+        try {
+            result = MainInvoker.invoke(mainClass, DaemonMain.class.getClassLoader(), args);
+        }
+        finally {
+            System.out.flush();
+            synchronized (lock) {
+                client = null;
+            }
+        }
+        if (result.getFailure() != null) {
+            StringWriter stackTrace = new StringWriter();
+            result.getFailure().printStackTrace(new PrintWriter(stackTrace));
+            String message = stackTrace.toString();
+            out.writeByte(FAILURE);
+            out.writeUTF(message.length() > MAX_FAILURE_LENGTH ? message.substring(0, MAX_FAILURE_LENGTH) : message);
+        }
+        out.writeByte(EXIT);
+        out.writeInt(result.getExitCode());
+        out.flush();
+    }
+}
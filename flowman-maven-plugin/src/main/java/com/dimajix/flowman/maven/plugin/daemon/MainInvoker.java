@@ -0,0 +1,153 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.daemon;
+
+import java.lang.reflect.InvocationTargetException;
+import java.security.Permission;
+
+
+/**
+ * Invokes the main method of a class within the current JVM and returns its exit code, together with any exception
+ * thrown by the main method. Calls to System.exit from
+ * within the main method are trapped by a security manager, which needs to be installed before. Only a single
+ * main method can be invoked at a time.
+ *
+ * This class is also used within the classpath of Flowman and therefore must not depend on any classes other than
+ * those of the JDK.
+ */
+public final class MainInvoker {
+    private static volatile Thread runThread;
+
+    private static final class ExitException extends SecurityException {
+        private final int status;
+
+        ExitException(int status) {
+            super("System.exit(" + status + ") has been trapped");
+            this.status = status;
+        }
+    }
+
+    /**
+     * Traps calls to System.exit from within the main method and allows everything else. The security manager is
+     * deprecated for removal, but it is still the only way to intercept System.exit of arbitrary code.
+     */
+    @SuppressWarnings("removal")
+    private static final class ExitTrap extends SecurityManager {
+        @Override
+        public void checkPermission(Permission perm) {
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if (Thread.currentThread() == runThread)
+                throw new ExitException(status);
+        }
+    }
+
+    /**
+     * The exit code of a main method, and the exception which made it fail, if any
+     */
+    public static final class Result {
+        private final int exitCode;
+        private final Throwable failure;
+
+        Result(int exitCode, Throwable failure) {
+            this.exitCode = exitCode;
+            this.failure = failure;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public Throwable getFailure() {
+            return failure;
+        }
+    }
+
+    private MainInvoker() {
+    }
+
+    /**
+     * Checks if the JVM allows installing a security manager without actually installing one. This is not the case
+     * for Java 18 and newer without -Djava.security.manager=allow.
+     */
+    public static boolean isExitTrapSupported() {
+        if ("allow".equals(System.getProperty("java.security.manager")))
+            return true;
+        String version = System.getProperty("java.specification.version", "");
+        if (version.startsWith("1."))
+            return true;
+        try {
+            return Integer.parseInt(version) < 18;
+        }
+        catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Installs the security manager trapping System.exit. Returns false if the JVM does not allow installing a
+     * security manager, which is the case for Java 18 and newer without -Djava.security.manager=allow.
+     */
+    @SuppressWarnings("removal")
+    public static synchronized boolean installExitTrap() {
+        if (System.getSecurityManager() instanceof ExitTrap)
+            return true;
+        try {
+            System.setSecurityManager(new ExitTrap());
+            return true;
+        }
+        catch (UnsupportedOperationException | SecurityException ex) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("removal")
+    public static synchronized void uninstallExitTrap() {
+        if (System.getSecurityManager() instanceof ExitTrap)
+            System.setSecurityManager(null);
+    }
+
+    public static synchronized Result invoke(String mainClass, ClassLoader classLoader, String[] args) {
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        runThread = thread;
+        try {
+            Class.forName(mainClass, true, classLoader).getMethod("main", String[].class).invoke(null, (Object)args);
+            return new Result(0, null);
+        }
+        catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof ExitException)
+                return new Result(((ExitException)cause).status, null);
+            return new Result(1, cause);
+        }
+        catch (ReflectiveOperationException ex) {
+            return new Result(1, ex);
+        }
+        finally {
+            runThread = null;
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+}
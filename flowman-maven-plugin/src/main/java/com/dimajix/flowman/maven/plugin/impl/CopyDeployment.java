@@ -16,34 +16,201 @@
 
 package com.dimajix.flowman.maven.plugin.impl;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.val;
+import lombok.var;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
+import com.dimajix.flowman.maven.fs.FileStatus;
+import com.dimajix.flowman.maven.fs.FileSystem;
 import com.dimajix.flowman.maven.plugin.tasks.ResolveArtifact;
+import com.dimajix.flowman.maven.plugin.util.Checksums;
 
 
 public class CopyDeployment extends AbstractDeployment {
+    private static final String RELEASES = "releases/";
+    private static final String CURRENT = "current";
+
     @JsonProperty(value="package", required = true)
     private String sourcePackage;
     @JsonProperty(value="location", required = true)
     private String targetLocation;
+    // Store each artifact in its own release directory and atomically switch a pointer to the latest release
+    @JsonProperty(value="versioned", required = false)
+    private boolean versioned = false;
+    // Number of releases to keep for versioned deployments (0 keeps all releases)
+    @JsonProperty(value="retain", required = false)
+    private int retain = 5;
+    // Synchronize the unpacked package contents instead of copying the archive, only changed files are transferred
+    @JsonProperty(value="sync", required = false)
+    private boolean sync = false;
+    // Remove all files from the target which are not contained in the package (only used with "sync")
+    @JsonProperty(value="deleteExtraneous", required = false)
+    private boolean deleteExtraneous = false;
+
+    @JsonIgnore
+    private Artifact artifact;
 
     @Override
-    public void deploy() throws MojoFailureException, MojoExecutionException {
-        // Pull and copy artifact
-        val mavenProject = mojo.getCurrentMavenProject();
+    public void resolve() throws MojoFailureException, MojoExecutionException {
+        if (sync && versioned)
+            throw new MojoExecutionException("Deployment of package '" + sourcePackage + "' cannot be both 'sync' and 'versioned'");
+        // Synchronized deployments use the build directory of the package and do not require the artifact
+        if (sync)
+            return;
+        // Rollbacks of versioned deployments only switch the release pointer and do not require the artifact
+        if (isRollback())
+            return;
+
         val pkg = mojo.getPackage(sourcePackage);
-        val myArtifact = pkg.getArtifact();
-        val pull = new ResolveArtifact(mojo, mavenProject);
+        val pull = new ResolveArtifact(mojo, mojo.getCurrentMavenProject());
+        artifact = pull.resolve(pkg.getArtifact());
+    }
+
+    @Override
+    public long deploy() throws MojoFailureException, MojoExecutionException {
+        if (artifact == null && !isRollback())
+            resolve();
+        if (sync)
+            return syncPackage();
+
+        // Copy artifact
+        val pull = new ResolveArtifact(mojo, mojo.getCurrentMavenProject());
         try {
-            pull.copy(myArtifact, new URI(targetLocation));
+            if (versioned) {
+                return deployRelease(pull, new URI(StringUtils.removeEnd(targetLocation, "/") + "/"));
+            }
+            else {
+                return pull.copy(artifact, new URI(targetLocation));
+            }
         } catch (URISyntaxException ex) {
-            throw new MojoExecutionException("Error copying artifact '" + myArtifact.getId() + "' to '" + targetLocation + "'", ex);
+            throw new MojoExecutionException("Error copying package '" + sourcePackage + "' to '" + targetLocation + "'", ex);
+        }
+    }
+
+    /**
+     * Synchronizes the build output directory of the package with the target location, such that only new or
+     * changed files are transferred.
+     */
+    private long syncPackage() throws MojoFailureException, MojoExecutionException {
+        val pkg = mojo.getPackage(sourcePackage);
+        val sources = new File(new File(mojo.getBuildDirectory(), pkg.getName()), "resources");
+        if (!sources.isDirectory())
+            throw new MojoExecutionException("Package '" + sourcePackage + "' has not been built, directory '" + sources + "' does not exist");
+
+        try {
+            val location = new URI(StringUtils.removeEnd(targetLocation, "/") + "/");
+            val fs = FileSystem.getFileSystem(location.getScheme());
+            log.info("Synchronizing '" + sources + "' to '" + location + "'");
+            return fs.sync(location, sources, deleteExtraneous);
+        }
+        catch (URISyntaxException|IOException ex) {
+            throw new MojoExecutionException("Error synchronizing package '" + sourcePackage + "' to '" + targetLocation + "'", ex);
+        }
+    }
+
+    private boolean isRollback() {
+        return versioned && StringUtils.isNotEmpty(mojo.getRelease());
+    }
+
+    /**
+     * Copies the artifact into a new release directory "releases/<version>-<hash>" and then atomically switches
+     * the pointer "current" to the new release. If a release is specified via "flowman.release", only the pointer is
+     * switched to this existing release, which allows rollbacks without copying any data.
+     */
+    private long deployRelease(ResolveArtifact pull, URI location) throws MojoExecutionException {
+        val fs = FileSystem.getFileSystem(location.getScheme());
+        val releases = location.resolve(RELEASES);
+        var release = mojo.getRelease();
+        var bytes = 0L;
+        try {
+            if (!isRollback()) {
+                release = artifact.getVersion() + "-" + Checksums.cachedSha256(artifact.getFile(), mojo.getChecksumsFile()).substring(0, 12);
+                bytes = pull.copy(artifact, releases.resolve(release));
+            }
+            else {
+                val name = release;
+                if (fs.list(releases).stream().noneMatch(s -> s.getName().equals(name)))
+                    throw new MojoExecutionException("Release '" + release + "' does not exist in '" + releases + "'");
+            }
+
+            log.info("Switching '" + location.resolve(CURRENT) + "' to release '" + release + "'");
+            fs.link(location.resolve(CURRENT), RELEASES + release);
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error deploying release '" + release + "' to '" + location + "'", ex);
+        }
+
+        removeOldReleases(fs, releases, release);
+        return bytes;
+    }
+
+    /**
+     * Removes all but the latest releases in parallel. The current release is never removed.
+     */
+    private void removeOldReleases(FileSystem fs, URI releases, String currentRelease) throws MojoExecutionException {
+        if (retain <= 0)
+            return;
+
+        List<FileStatus> oldReleases;
+        try {
+            oldReleases = fs.list(releases).stream()
+                .filter(FileStatus::isDirectory)
+                .filter(s -> !s.getName().equals(currentRelease))
+                .sorted(Comparator.comparingLong(FileStatus::getModificationTime).reversed())
+                .skip(Math.max(0, retain - 1))
+                .collect(Collectors.toList());
+        }
+        catch (UnsupportedOperationException ex) {
+            log.warn("Cannot remove old releases: " + ex.getMessage());
+            return;
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error listing releases in '" + releases + "'", ex);
+        }
+        if (oldReleases.isEmpty())
+            return;
+
+        val executor = Executors.newFixedThreadPool(Math.min(4, oldReleases.size()));
+        try {
+            val deletions = new ArrayList<Future<?>>();
+            for (FileStatus oldRelease : oldReleases) {
+                val uri = releases.resolve(oldRelease.getName() + "/");
+                log.info("Removing old release '" + uri + "'");
+                deletions.add(executor.submit(() -> {
+                    fs.delete(uri, true);
+                    return null;
+                }));
+            }
+            for (Future<?> deletion : deletions) {
+                deletion.get();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while removing old releases from '" + releases + "'", ex);
+        }
+        catch (ExecutionException ex) {
+            throw new MojoExecutionException("Error removing old releases from '" + releases + "'", ex.getCause());
+        }
+        finally {
+            executor.shutdownNow();
         }
     }
 }
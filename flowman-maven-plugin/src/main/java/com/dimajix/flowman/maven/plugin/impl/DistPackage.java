@@ -23,6 +23,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -36,25 +37,33 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.val;
 import lombok.var;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
 import static com.dimajix.flowman.maven.plugin.util.Jackson.newYAMLFactory;
 
+import com.dimajix.flowman.maven.plugin.model.FlowmanSettings;
 import com.dimajix.flowman.maven.plugin.tasks.AssembleDist;
 import com.dimajix.flowman.maven.plugin.tasks.ProcessResources;
 import com.dimajix.flowman.maven.plugin.tasks.ResolveArtifact;
 import com.dimajix.flowman.maven.plugin.tasks.RunArtifacts;
 import com.dimajix.flowman.maven.plugin.tasks.UnpackDependencies;
+import com.dimajix.flowman.maven.plugin.tasks.assembly.ArchiveSet;
 import com.dimajix.flowman.maven.plugin.tasks.assembly.AssemblyDescriptor;
 import com.dimajix.flowman.maven.plugin.tasks.assembly.FileSet;
 import com.dimajix.flowman.maven.plugin.util.Jackson;
 
 
 public class DistPackage extends AbstractPackage {
+    private static final String[] DIST_EXCLUDES = { "bin/*", "conf/*", "plugins/**", "examples/**" };
+    private static final String[] DIST_EXECUTABLES = { "bin/*" };
+
     @JsonProperty(value="baseDirectory", required = false)
     private String baseDirectory;
+    @JsonProperty(value="repack", required = false)
+    private boolean repack = false;
 
     @Override
     public String getType() {
@@ -68,25 +77,18 @@ public class DistPackage extends AbstractPackage {
         val buildDirectory = getBuildDirectory();
         val outputDirectory = getOutputDirectory();
 
-        // 1. Unpack Flowman
-        val dist = flowmanSettings.resolveDist();
-        val unpack = new UnpackDependencies(mojo, mavenProject);
-        unpack.unpack(Collections.singletonList(dist), buildDirectory);
-
-        // 2. Unpack and install additional plugins
-        val plugins = flowmanSettings.resolvePluginDists();
-        if (!plugins.isEmpty()) {
-            // TODO: This assumes a certain directory structure in the tar.gz
-            unpack.unpack(plugins, new File(buildDirectory, "flowman-" + flowmanSettings.getVersion()));
+        // 1. Unpack Flowman and additional plugins. When repacking, this is deferred until it is actually required
+        if (!repack) {
+            unpackDist();
         }
 
-        // 3. Process sources
+        // 2. Process sources
         val resources = new ProcessResources(mojo, mavenProject);
         resources.processResources(mojo.getDescriptor().getProjects(), outputDirectory);
         resources.processResources(mojo.getDescriptor().getResources(), outputDirectory);
         resources.processResources(new File("conf"), outputDirectory);
 
-        // 4. Create appropriate default-namespace.yml
+        // 3. Create appropriate default-namespace.yml
         val ns = new File(outputDirectory, "conf/default-namespace.yml");
         try {
             val mapper = new ObjectMapper(newYAMLFactory());
@@ -120,6 +122,8 @@ public class DistPackage extends AbstractPackage {
                     .collect(Collectors.toList());
             Jackson.mergeArray(objectTree, "plugins", pluginNames);
 
+            // The file may be a hard link into the cache of unpacked distributions, so it must not be modified in place
+            Files.deleteIfExists(ns.toPath());
             mapper.writer().writeValue(ns, objectTree);
         }
         catch(IOException ex) {
@@ -135,16 +139,18 @@ public class DistPackage extends AbstractPackage {
         val outputDirectory = getOutputDirectory();
 
         val confDirectory = new File(outputDirectory, "conf");
-        // TODO: This assumes a certain directory structure in the tar.gz
-        val homeDirectory = new File(buildDirectory, "flowman-" + flowmanSettings.getVersion());
+        val homeDirectory = new File(buildDirectory, getDistDirectory(flowmanSettings));
         val projectDirectories = project != null ? java.util.Collections.singletonList(project) : mojo.getDescriptor().getProjects();
+        if (repack) {
+            unpackDist();
+        }
 
         // 3. Execute Tests
         val run = new RunArtifacts(mojo, mavenProject, homeDirectory, confDirectory, getEffectiveExecutionSettings());
-        for (File flow : projectDirectories) {
-            val projectDirectory = new File(outputDirectory, flow.getPath());
-            run.runTests(projectDirectory);
-        }
+        val testDirectories = projectDirectories.stream()
+            .map(flow -> new File(outputDirectory, flow.getPath()))
+            .collect(Collectors.toList());
+        run.runTests(testDirectories, mojo.getForkCount(), mojo.getTestShards());
     }
 
     @Override
@@ -154,8 +160,7 @@ public class DistPackage extends AbstractPackage {
         val buildDirectory = getBuildDirectory();
         val outputDirectory = getOutputDirectory();
         val confDirectory = new File(outputDirectory, "conf");
-        // TODO: This assumes a certain directory structure in the tar.gz
-        val homeDirectory = new File(buildDirectory, "flowman-" + flowmanSettings.getVersion());
+        val homeDirectory = new File(buildDirectory, getDistDirectory(flowmanSettings));
 
         val ns = new File(outputDirectory, "conf/default-namespace.yml");
         val plugins = new HashSet<String>();
@@ -192,23 +197,29 @@ public class DistPackage extends AbstractPackage {
         descriptor.setBaseDirectory(baseDirectory != null ? baseDirectory : mavenProject.getArtifactId() + "-" + mavenProject.getVersion());
 
         val fileSets = new LinkedList<FileSet>();
-        // Flowman-dist
-        fileSets.add(new FileSet(
-            homeDirectory.toString(),
-            "",
-            "0644",
-            "0755",
-            Arrays.asList("**/*"),
-            Arrays.asList("bin/*", "conf/*", "plugins/**", "examples/**")
-        ));
-        fileSets.add(new FileSet(
-            homeDirectory.toString(),
-            "",
-            "0755",
-            "0755",
-            Arrays.asList("bin/*"),
-            Collections.emptyList()
-        ));
+        if (repack) {
+            // Flowman-dist and plugins are copied directly from their original archives
+            descriptor.setArchiveSets(createArchiveSets(flowmanSettings, plugins));
+        }
+        else {
+            // Flowman-dist
+            fileSets.add(new FileSet(
+                homeDirectory.toString(),
+                "",
+                "0644",
+                "0755",
+                Arrays.asList("**/*"),
+                Arrays.asList(DIST_EXCLUDES)
+            ));
+            fileSets.add(new FileSet(
+                homeDirectory.toString(),
+                "",
+                "0755",
+                "0755",
+                Arrays.asList(DIST_EXECUTABLES),
+                Collections.emptyList()
+            ));
+        }
         // Config
         fileSets.add(new FileSet(
             confDirectory.toString(),
@@ -219,18 +230,20 @@ public class DistPackage extends AbstractPackage {
             Collections.emptyList()
         ));
         // Plugins
-        plugins.stream()
-            .filter(p -> !p.contains(":"))
-            .forEach(plugin ->
-                fileSets.add(new FileSet(
-                    new File(homeDirectory, "plugins/" + plugin).toString(),
-                    new File("plugins", plugin).toString(),
-                    "0644",
-                    "0755",
-                    Collections.emptyList(),
-                    Collections.emptyList()
-                ))
-            );
+        if (!repack) {
+            plugins.stream()
+                .filter(p -> !p.contains(":"))
+                .forEach(plugin ->
+                    fileSets.add(new FileSet(
+                        new File(homeDirectory, "plugins/" + plugin).toString(),
+                        new File("plugins", plugin).toString(),
+                        "0644",
+                        "0755",
+                        Collections.emptyList(),
+                        Collections.emptyList()
+                    ))
+                );
+        }
         // Projects
         mojo.getDescriptor().getProjects().forEach(project ->
             fileSets.add(new FileSet(
@@ -262,6 +275,61 @@ public class DistPackage extends AbstractPackage {
         mojo.attachArtifact(artifact.getFile(), artifact.getType(), getName());
     }
 
+    private void unpackDist() throws MojoFailureException, MojoExecutionException {
+        val flowmanSettings = getEffectiveFlowmanSettings();
+        val mavenProject = mojo.getCurrentMavenProject();
+        val buildDirectory = getBuildDirectory();
+
+        val dist = flowmanSettings.resolveDist();
+        val unpack = new UnpackDependencies(mojo, mavenProject);
+        unpack.unpack(Collections.singletonList(dist), buildDirectory);
+
+        // Unpack and install additional plugins
+        val plugins = flowmanSettings.resolvePluginDists();
+        if (!plugins.isEmpty()) {
+            unpack.unpack(plugins, new File(buildDirectory, getDistDirectory(flowmanSettings)));
+        }
+    }
+
+    /**
+     * Creates archive sets which select the same entries from the original Flowman and plugin archives as the
+     * file sets would select from the unpacked distribution.
+     */
+    private List<ArchiveSet> createArchiveSets(FlowmanSettings flowmanSettings, Collection<String> plugins) throws MojoFailureException, MojoExecutionException {
+        val resolver = new ResolveArtifact(mojo, mojo.getCurrentMavenProject());
+        val pluginIncludes = plugins.stream()
+            .filter(p -> !p.contains(":"))
+            .map(p -> "plugins/" + p + "/**")
+            .collect(Collectors.toList());
+
+        val archiveSets = new LinkedList<ArchiveSet>();
+        // Plugins come first, since they would overwrite files of Flowman-dist when being unpacked
+        if (!pluginIncludes.isEmpty()) {
+            for (Artifact plugin : flowmanSettings.resolvePluginDists()) {
+                val archive = resolver.resolve(plugin).getFile().toString();
+                archiveSets.add(new ArchiveSet(archive, "", "", "0644", "0755", pluginIncludes, Collections.emptyList()));
+            }
+        }
+
+        val dist = resolver.resolve(flowmanSettings.resolveDist()).getFile().toString();
+        val prefix = getDistDirectory(flowmanSettings) + "/";
+        archiveSets.add(new ArchiveSet(dist, prefix, "", "0644", "0755", Arrays.asList("**/*"), Arrays.asList(DIST_EXCLUDES)));
+        archiveSets.add(new ArchiveSet(dist, prefix, "", "0755", "0755", Arrays.asList(DIST_EXECUTABLES), Collections.emptyList()));
+        if (!pluginIncludes.isEmpty()) {
+            archiveSets.add(new ArchiveSet(dist, prefix, "", "0644", "0755", pluginIncludes, Collections.emptyList()));
+        }
+        return archiveSets;
+    }
+
+    /**
+     * Returns the top level directory of the Flowman distribution archive, which also is the Flowman home directory
+     * after unpacking the archive into the build directory.
+     */
+    private static String getDistDirectory(FlowmanSettings flowmanSettings) {
+        // TODO: This assumes a certain directory structure in the tar.gz
+        return "flowman-" + flowmanSettings.getVersion();
+    }
+
     @Override
     public void shell(File project) throws MojoFailureException, MojoExecutionException {
         val flowmanSettings = getEffectiveFlowmanSettings();
@@ -271,8 +339,11 @@ public class DistPackage extends AbstractPackage {
 
         val projectDirectory = new File(outputDirectory, project.getPath());
         val confDirectory = new File(outputDirectory, "conf");
-        // TODO: This assumes a certain directory structure in the tar.gz
-        val homeDirectory = new File(buildDirectory, "flowman-" + flowmanSettings.getVersion());
+        val homeDirectory = new File(buildDirectory, getDistDirectory(flowmanSettings));
+
+        if (repack) {
+            unpackDist();
+        }
 
         val run = new RunArtifacts(mojo, mavenProject, homeDirectory, confDirectory, getEffectiveExecutionSettings());
         run.runShell(projectDirectory);
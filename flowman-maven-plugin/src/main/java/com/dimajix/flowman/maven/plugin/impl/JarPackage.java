@@ -112,10 +112,10 @@ public class JarPackage extends AbstractPackage {
 
         // Execute Tests
         val run = new RunArtifacts(mojo, mavenProject, null, confDirectory, getEffectiveExecutionSettings());
-        for (File flow : projectDirectories) {
-            val projectDirectory = new File(outputDirectory, flow.getPath());
-            run.runTests(projectDirectory);
-        }
+        val testDirectories = projectDirectories.stream()
+            .map(flow -> new File(outputDirectory, flow.getPath()))
+            .collect(Collectors.toList());
+        run.runTests(testDirectories, mojo.getForkCount(), mojo.getTestShards());
     }
 
     @Override
@@ -37,5 +37,13 @@ public abstract class Deployment {
     private String name;
 
     abstract public void init(FlowmanMojo mojo);
-    abstract public void deploy() throws MojoFailureException, MojoExecutionException;
+    /**
+     * Resolves all artifacts required by the deployment. This is called for all deployments before any of them is
+     * deployed, such that artifacts shared by multiple deployments are only resolved once.
+     */
+    abstract public void resolve() throws MojoFailureException, MojoExecutionException;
+    /**
+     * Deploys all artifacts and returns the number of bytes transferred
+     */
+    abstract public long deploy() throws MojoFailureException, MojoExecutionException;
 }
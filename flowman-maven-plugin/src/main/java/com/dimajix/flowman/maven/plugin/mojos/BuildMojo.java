@@ -27,8 +27,6 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
-import com.dimajix.flowman.maven.plugin.model.Package;
-
 
 @Mojo( name = "build", threadSafe = true, defaultPhase = LifecyclePhase.COMPILE)
 public class BuildMojo extends FlowmanMojo {
@@ -39,19 +37,11 @@ public class BuildMojo extends FlowmanMojo {
     public void execute() throws MojoExecutionException, MojoFailureException {
         val packages = StringUtils.isEmpty(pkg) ? getPackages() : Collections.singletonList(getPackage(pkg));
 
-        for (Package pkg : packages) {
+        forEachPackage(packages, pkg -> {
             getLog().info("");
             getLog().info("-- Building package '" + pkg.getName() + "'");
 
-            val project = createMavenProject(pkg);
-            val previousProject = mavenSession.getCurrentProject();
-            try {
-                mavenSession.setCurrentProject(project);
-                pkg.build();
-            }
-            finally {
-                mavenSession.setCurrentProject(previousProject);
-            }
-        }
+            pkg.build();
+        });
     }
 }
@@ -16,8 +16,16 @@
 
 package com.dimajix.flowman.maven.plugin.mojos;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import lombok.Value;
 import lombok.val;
 import lombok.var;
 import org.apache.commons.lang3.StringUtils;
@@ -34,15 +42,110 @@ public class DeployMojo extends FlowmanMojo {
     @Parameter( property="flowman.deployment")
     protected String deployment;
 
+    @Value
+    private static class Result {
+        Deployment deployment;
+        long bytes;
+        long duration;
+        Throwable failure;
+    }
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         val deployments = StringUtils.isEmpty(deployment) ? getDeployments() : Collections.singletonList(getDeployment(deployment));
 
+        // Resolve all artifacts before deploying anything, such that artifacts shared by multiple deployments are
+        // only resolved once
         for (Deployment deployment : deployments) {
-            getLog().info("");
-            getLog().info("-- Deploying deployment '" + deployment.getName() + "'");
+            deployment.resolve();
+        }
+
+        val results = new ArrayList<Result>();
+        val threadCount = Math.min(getDeployThreadCount(), deployments.size());
+        if (threadCount <= 1) {
+            for (Deployment deployment : deployments) {
+                val result = deploy(deployment);
+                results.add(result);
+                if (result.getFailure() != null)
+                    break;
+            }
+        }
+        else {
+            getLog().info("Executing " + deployments.size() + " deployments with " + threadCount + " threads");
+            val executor = Executors.newFixedThreadPool(threadCount);
+            try {
+                val futures = new LinkedHashMap<Deployment, Future<Result>>();
+                for (Deployment deployment : deployments) {
+                    futures.put(deployment, executor.submit(() -> deploy(deployment)));
+                }
+                for (Map.Entry<Deployment, Future<Result>> entry : futures.entrySet()) {
+                    try {
+                        results.add(entry.getValue().get());
+                    }
+                    catch (ExecutionException ex) {
+                        results.add(new Result(entry.getKey(), 0, 0, ex.getCause()));
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new MojoExecutionException("Interrupted while waiting for deployment '" + entry.getKey().getName() + "'", ex);
+                    }
+                }
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+
+        reportResults(results);
+    }
 
-            deployment.deploy();
+    private Result deploy(Deployment deployment) {
+        getLog().info("");
+        getLog().info("-- Deploying deployment '" + deployment.getName() + "'");
+
+        val startTime = System.currentTimeMillis();
+        try {
+            val bytes = deployment.deploy();
+            return new Result(deployment, bytes, System.currentTimeMillis() - startTime, null);
+        }
+        catch (MojoExecutionException | MojoFailureException | RuntimeException ex) {
+            getLog().error("Deployment '" + deployment.getName() + "' failed: " + ex.getMessage());
+            return new Result(deployment, 0, System.currentTimeMillis() - startTime, ex);
+        }
+    }
+
+    private void reportResults(List<Result> results) throws MojoExecutionException, MojoFailureException {
+        getLog().info("");
+        getLog().info("Deployment results:");
+        Throwable failure = null;
+        for (Result result : results) {
+            val name = result.getDeployment().getName();
+            val duration = String.format("%.1f s", result.getDuration() / 1000.0);
+            if (result.getFailure() == null) {
+                var throughput = "";
+                if (result.getBytes() > 0 && result.getDuration() > 0)
+                    throughput = ", " + formatSize(result.getBytes() * 1000 / result.getDuration()) + "/s";
+                getLog().info("  " + name + ": SUCCESS (" + formatSize(result.getBytes()) + " in " + duration + throughput + ")");
+            }
+            else {
+                getLog().error("  " + name + ": FAILED (" + duration + ")");
+                if (failure == null)
+                    failure = result.getFailure();
+            }
         }
+
+        if (failure instanceof MojoExecutionException)
+            throw (MojoExecutionException)failure;
+        else if (failure instanceof MojoFailureException)
+            throw (MojoFailureException)failure;
+        else if (failure != null)
+            throw new MojoExecutionException("Error executing deployments", failure);
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024)
+            return bytes + " B";
+        val exponent = Math.min(4, (int)(Math.log(bytes) / Math.log(1024)));
+        return String.format("%.1f %sB", bytes / Math.pow(1024, exponent), "KMGT".charAt(exponent - 1));
     }
 }
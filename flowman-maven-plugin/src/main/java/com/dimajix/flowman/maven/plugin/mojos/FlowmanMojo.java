@@ -23,6 +23,9 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import lombok.Getter;
@@ -72,7 +75,6 @@ abstract public class FlowmanMojo extends AbstractMojo {
     /**
      * The current Maven session.
      */
-    @Getter
     @Parameter( defaultValue = "${session}", readonly = true, required = true )
     protected MavenSession mavenSession;
 
@@ -115,10 +117,95 @@ abstract public class FlowmanMojo extends AbstractMojo {
     protected File buildDirectory;
     @Parameter( defaultValue = "${project.directory}/deployment.yml", property="flowman.deploymentDescriptor")
     protected File deploymentDescriptor;
+    /**
+     * The number of packages to process in parallel. Either an absolute number like "4" or a multiple of the
+     * available CPU cores like "1C".
+     */
+    @Parameter( defaultValue = "1", property="flowman.threads")
+    protected String threads;
+    /**
+     * The number of Flowman processes to run in parallel when testing multiple Flowman projects of a single package.
+     * Either an absolute number like "4" or a multiple of the available CPU cores like "1C".
+     */
+    @Parameter( defaultValue = "1", property="flowman.forkCount")
+    protected String forkCount;
+    /**
+     * The number of deployments to execute in parallel. Either an absolute number like "4" or a multiple of the
+     * available CPU cores like "1C". Deployments are mostly bound by the network, so this may exceed the number of cores.
+     */
+    @Parameter( defaultValue = "1", property="flowman.deployThreads")
+    protected String deployThreads;
+    /**
+     * The number of shards to split the tests of a single Flowman project into. Each shard is executed by a separate
+     * Flowman process, therefore this is most useful together with "forkCount".
+     */
+    @Parameter( defaultValue = "1", property="flowman.testShards")
+    protected String testShards;
+    /**
+     * Optional directory for storing the durations of previous test runs, which are used for starting the slowest
+     * tests first. Per default, durations are stored in the build directory of each package.
+     */
+    @Getter
+    @Parameter( property="flowman.timingsDirectory")
+    protected File timingsDirectory;
+    /**
+     * Only run the tests of Flowman projects which have changed since their last successful test run. Changes
+     * include the project itself, Flowman and its configuration, the classpath and all execution settings.
+     */
+    @Getter
+    @Parameter( defaultValue = "false", property="flowman.incrementalTests")
+    protected boolean incrementalTests;
+    /**
+     * Run Flowman tests in long living JVMs (daemons), which are reused by subsequent test runs.
+     */
+    @Getter
+    @Parameter( defaultValue = "false", property="flowman.daemon")
+    protected boolean daemon;
+    /**
+     * The number of minutes after which an idle daemon terminates itself.
+     */
+    @Getter
+    @Parameter( defaultValue = "180", property="flowman.daemonIdleTimeout")
+    protected int daemonIdleTimeout;
+    /**
+     * Run Flowman tests within the Maven JVM using an isolated class loader instead of starting new JVMs.
+     */
+    @Getter
+    @Parameter( defaultValue = "false", property="flowman.inProcess")
+    protected boolean inProcess;
+    /**
+     * Create and use AppCDS archives for all JVMs running Flowman, which speeds up their start. This requires
+     * Java 13 or newer.
+     */
+    @Getter
+    @Parameter( defaultValue = "false", property="flowman.cds")
+    protected boolean cds;
+    /**
+     * The release to activate for versioned deployments. This allows rolling back to a previous release without
+     * copying the artifact again.
+     */
+    @Getter
+    @Parameter( property="flowman.release")
+    protected String release;
 
     private Descriptor cachedDescriptor = null;
+    private final ThreadLocal<MavenSession> workerSession = new ThreadLocal<>();
+
+    @FunctionalInterface
+    protected interface PackageAction {
+        void execute(Package pkg) throws MojoExecutionException, MojoFailureException;
+    }
 
-    public Descriptor getDescriptor() throws MojoFailureException {
+    /**
+     * Returns the Maven session of the current thread. When packages are processed in parallel, each worker
+     * thread has its own copy of the session, such that the current project can be set independently.
+     */
+    public MavenSession getMavenSession() {
+        val session = workerSession.get();
+        return session != null ? session : mavenSession;
+    }
+
+    public synchronized Descriptor getDescriptor() throws MojoFailureException {
         if (cachedDescriptor == null) {
             try {
                 val interpolator = StringInterpolator.createInterpolator(mavenSession, mavenProject);
@@ -137,8 +224,54 @@ abstract public class FlowmanMojo extends AbstractMojo {
         return cachedDescriptor;
     }
 
+    /**
+     * Returns the directory which is used for caching intermediate results, which can be shared between packages.
+     */
+    public File getCacheDirectory() {
+        return new File(buildDirectory, ".flowman-cache");
+    }
+
+    /**
+     * Returns the file storing the checksums of artifacts, which are reused as long as the artifacts do not change.
+     */
+    public File getChecksumsFile() {
+        return new File(getCacheDirectory(), "checksums.properties");
+    }
+
     public MavenProject getCurrentMavenProject() {
-        return mavenSession.getCurrentProject();
+        return getMavenSession().getCurrentProject();
+    }
+
+    public int getThreadCount() throws MojoExecutionException {
+        return parseCount("threads", threads);
+    }
+
+    public int getDeployThreadCount() throws MojoExecutionException {
+        return parseCount("deploy threads", deployThreads);
+    }
+
+    public int getForkCount() throws MojoExecutionException {
+        return parseCount("forks", forkCount);
+    }
+
+    public int getTestShards() throws MojoExecutionException {
+        return parseCount("test shards", testShards);
+    }
+
+    private static int parseCount(String name, String count) throws MojoExecutionException {
+        val value = StringUtils.trim(count);
+        try {
+            if (StringUtils.endsWithIgnoreCase(value, "C")) {
+                val factor = Float.parseFloat(value.substring(0, value.length() - 1));
+                return Math.max(1, (int)(factor * Runtime.getRuntime().availableProcessors()));
+            }
+            else {
+                return Math.max(1, Integer.parseInt(value));
+            }
+        }
+        catch (NumberFormatException ex) {
+            throw new MojoExecutionException("Invalid number of " + name + " '" + count + "'. Please specify a number like '4' or a multiple of CPU cores like '1C'.", ex);
+        }
     }
 
     public List<Package> getPackages() throws MojoFailureException {
@@ -190,6 +323,76 @@ abstract public class FlowmanMojo extends AbstractMojo {
         }
     }
 
+    /**
+     * Executes an action for each package with a package specific Maven project set as the current project. The
+     * packages are processed in parallel, if more than a single thread is configured via 'flowman.threads'.
+     */
+    protected void forEachPackage(List<Package> packages, PackageAction action) throws MojoExecutionException, MojoFailureException {
+        val threadCount = Math.min(getThreadCount(), packages.size());
+        if (threadCount <= 1) {
+            for (Package pkg : packages) {
+                val project = createMavenProject(pkg);
+                val previousProject = mavenSession.getCurrentProject();
+                try {
+                    mavenSession.setCurrentProject(project);
+                    action.execute(pkg);
+                }
+                finally {
+                    mavenSession.setCurrentProject(previousProject);
+                }
+            }
+        }
+        else {
+            getLog().info("Processing " + packages.size() + " packages with " + threadCount + " threads");
+            val executor = Executors.newFixedThreadPool(threadCount);
+            try {
+                val futures = new LinkedHashMap<Package, Future<Void>>();
+                for (Package pkg : packages) {
+                    futures.put(pkg, executor.submit(() -> {
+                        // Each worker gets its own shallow copy of the session, such that setting the current project
+                        // does not interfere with other workers
+                        val session = mavenSession.clone();
+                        workerSession.set(session);
+                        try {
+                            session.setCurrentProject(createMavenProject(pkg));
+                            action.execute(pkg);
+                        }
+                        finally {
+                            workerSession.remove();
+                        }
+                        return null;
+                    }));
+                }
+
+                Throwable failure = null;
+                for (Map.Entry<Package, Future<Void>> entry : futures.entrySet()) {
+                    try {
+                        entry.getValue().get();
+                    }
+                    catch (ExecutionException ex) {
+                        getLog().error("Package '" + entry.getKey().getName() + "' failed: " + ex.getCause().getMessage());
+                        if (failure == null)
+                            failure = ex.getCause();
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new MojoExecutionException("Interrupted while waiting for package '" + entry.getKey().getName() + "'", ex);
+                    }
+                }
+
+                if (failure instanceof MojoExecutionException)
+                    throw (MojoExecutionException)failure;
+                else if (failure instanceof MojoFailureException)
+                    throw (MojoFailureException)failure;
+                else if (failure != null)
+                    throw new MojoExecutionException("Error processing packages", failure);
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
     protected MavenProject createMavenProject(Package pkg) throws MojoFailureException, MojoExecutionException {
         val mojoProject = getMavenProject();
         val artifact = pkg.getArtifact();
@@ -227,11 +430,11 @@ abstract public class FlowmanMojo extends AbstractMojo {
         return mavenProject;
     }
 
-    public void attachArtifact(File artifactFile, String artifactClassifier) {
+    public synchronized void attachArtifact(File artifactFile, String artifactClassifier) {
         mavenProjectHelper.attachArtifact(mavenProject, artifactFile, artifactClassifier);
     }
 
-    public void attachArtifact(File artifactFile, String artifactType, String artifactClassifier) {
+    public synchronized void attachArtifact(File artifactFile, String artifactType, String artifactClassifier) {
         mavenProjectHelper.attachArtifact(mavenProject, artifactType, artifactClassifier, artifactFile);
     }
 
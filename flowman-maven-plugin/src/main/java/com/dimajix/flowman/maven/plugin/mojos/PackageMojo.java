@@ -26,8 +26,6 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
-import com.dimajix.flowman.maven.plugin.model.Package;
-
 
 @Mojo( name = "package", threadSafe = true, defaultPhase = LifecyclePhase.PACKAGE)
 public class PackageMojo extends FlowmanMojo {
@@ -38,20 +36,12 @@ public class PackageMojo extends FlowmanMojo {
     public void execute() throws MojoExecutionException, MojoFailureException {
         val packages = StringUtils.isEmpty(pkg) ? getPackages() : Collections.singletonList(getPackage(pkg));
 
-        for (Package pkg : packages) {
+        forEachPackage(packages, pkg -> {
             getLog().info("");
             getLog().info("-- Packaging package '" + pkg.getName() + "'");
 
-            val project = createMavenProject(pkg);
-            val previousProject = mavenSession.getCurrentProject();
-            try {
-                mavenSession.setCurrentProject(project);
-                pkg.pack();
-            }
-            finally {
-                mavenSession.setCurrentProject(previousProject);
-            }
-        }
+            pkg.pack();
+        });
 
         // Attach root pom
         mavenProject.getArtifact().setFile(mavenProject.getFile());
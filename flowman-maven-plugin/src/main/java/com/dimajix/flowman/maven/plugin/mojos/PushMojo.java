@@ -28,8 +28,6 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
-import com.dimajix.flowman.maven.plugin.model.Package;
-
 
 @Mojo( name = "push", threadSafe = true, defaultPhase = LifecyclePhase.DEPLOY)
 public class PushMojo extends FlowmanMojo {
@@ -40,19 +38,11 @@ public class PushMojo extends FlowmanMojo {
     public void execute() throws MojoExecutionException, MojoFailureException {
         val packages = StringUtils.isEmpty(pkg) ? getPackages() : Collections.singletonList(getPackage(pkg));
 
-        for (Package pkg : packages) {
+        forEachPackage(packages, pkg -> {
             getLog().info("");
             getLog().info("-- Pushing package '" + pkg.getName() + "'");
 
-            val project = createMavenProject(pkg);
-            val previousProject = mavenSession.getCurrentProject();
-            try {
-                mavenSession.setCurrentProject(project);
-                pkg.push();
-            }
-            finally {
-                mavenSession.setCurrentProject(previousProject);
-            }
-        }
+            pkg.push();
+        });
     }
 }
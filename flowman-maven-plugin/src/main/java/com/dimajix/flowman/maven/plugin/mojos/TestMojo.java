@@ -18,6 +18,7 @@ package com.dimajix.flowman.maven.plugin.mojos;
 
 import java.io.File;
 import java.util.Collections;
+import java.util.LinkedList;
 
 import lombok.val;
 import lombok.var;
@@ -29,6 +30,7 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import com.dimajix.flowman.maven.plugin.model.Package;
+import com.dimajix.flowman.maven.plugin.tasks.InProcessRunner;
 
 
 @Mojo( name = "test", threadSafe = true, defaultPhase = LifecyclePhase.TEST)
@@ -45,25 +47,29 @@ public class TestMojo extends FlowmanMojo {
         if (!skipTests) {
             val packages = StringUtils.isEmpty(pkg) ? getPackages() : Collections.singletonList(getPackage(pkg));
 
+            File flow = project != null ? getFlowmanProject(this.project) : null;
+            val testPackages = new LinkedList<Package>();
             for (Package pkg : packages) {
-                getLog().info("");
-
-                if (skipTests || pkg.isSkipTests()) {
+                if (pkg.isSkipTests()) {
+                    getLog().info("");
                     getLog().info("-- Skipping test package '" + pkg.getName() + "'");
                 }
                 else {
+                    testPackages.add(pkg);
+                }
+            }
+
+            try {
+                forEachPackage(testPackages, pkg -> {
+                    getLog().info("");
                     getLog().info("-- Testing package '" + pkg.getName() + "'");
 
-                    val mavenProject = createMavenProject(pkg);
-                    val previousProject = mavenSession.getCurrentProject();
-                    try {
-                        mavenSession.setCurrentProject(mavenProject);
-                        File flow = project != null ? getFlowmanProject(this.project) : null;
-                        pkg.test(flow);
-                    } finally {
-                        mavenSession.setCurrentProject(previousProject);
-                    }
-                }
+                    pkg.test(flow);
+                });
+            }
+            finally {
+                // Release all class loaders used for in-process test runs
+                InProcessRunner.close(getMavenSession().getRepositorySession());
             }
         }
     }
@@ -16,65 +16,241 @@
 
 package com.dimajix.flowman.maven.plugin.tasks;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import lombok.val;
+import lombok.var;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.SelectorUtils;
 
-import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
-
-import com.dimajix.flowman.maven.plugin.model.Package;
 import com.dimajix.flowman.maven.plugin.mojos.FlowmanMojo;
+import com.dimajix.flowman.maven.plugin.tasks.assembly.ArchiveSet;
 import com.dimajix.flowman.maven.plugin.tasks.assembly.AssemblyDescriptor;
-import com.dimajix.flowman.maven.plugin.util.Jackson;
+import com.dimajix.flowman.maven.plugin.tasks.assembly.FileSet;
+import com.dimajix.flowman.maven.plugin.util.ParallelGzipOutputStream;
 
 
+/**
+ * Creates a tar.gz archive from an assembly descriptor. The files are streamed directly into the archive, which is
+ * compressed in parallel. Entries of {@link ArchiveSet}s are copied directly from their source archives without
+ * unpacking them. If multiple sets contain the same entry, the first one wins, and archive sets always take
+ * precedence over file sets.
+ */
 public class AssembleDist extends Task {
+    private static final int DIRECTORY_TYPE = 040000;
+    private static final int FILE_TYPE = 0100000;
+    private static final int SYMLINK_MODE = 0120777;
+
+    private final Log log;
+
     public AssembleDist(FlowmanMojo mojo, MavenProject mavenProject) throws MojoFailureException {
         super(mojo, mavenProject);
+        this.log = mojo.getLog();
     }
 
     public void assemble(AssemblyDescriptor assemblyDescriptor, String finalName) throws MojoExecutionException {
-        val buildDirectory = mavenProject.getBuild().getDirectory();
-        val assemblyDescriptorFile = new File(buildDirectory, "assembly.xml");
-        XmlMapper mapper = new XmlMapper(Jackson.newXMLFactory());
+        if (!assemblyDescriptor.getFormats().equals(Arrays.asList("tar.gz")))
+            throw new MojoExecutionException("Unsupported assembly formats " + assemblyDescriptor.getFormats() + ", only 'tar.gz' is supported");
+
+        val baseDirectory = assemblyDescriptor.getIncludeBaseDirectory() ? assemblyDescriptor.getBaseDirectory() : "";
+        val archive = new File(buildDirectory, finalName + ".tar.gz");
+        log.info("Building tar: " + archive);
         try {
-            mapper.writer().writeValue(assemblyDescriptorFile, assemblyDescriptor);
-        } catch (IOException ex) {
-            throw new MojoExecutionException("Error writing assembly descriptor '" + assemblyDescriptorFile + "'", ex);
+            Files.createDirectories(buildDirectory.toPath());
+            try (val out = new TarArchiveOutputStream(new ParallelGzipOutputStream(new BufferedOutputStream(Files.newOutputStream(archive.toPath()))), "UTF-8")) {
+                out.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                out.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+                val writer = new Writer(out);
+
+                // Group archive sets by their archive, such that each archive only needs to be read once
+                val archiveSets = assemblyDescriptor.getArchiveSets().stream()
+                    .collect(Collectors.groupingBy(ArchiveSet::getArchive, LinkedHashMap::new, Collectors.toList()));
+                for (List<ArchiveSet> sets : archiveSets.values()) {
+                    copyArchive(sets, baseDirectory, writer);
+                }
+                for (FileSet fileSet : assemblyDescriptor.getFileSets()) {
+                    copyFileSet(fileSet, baseDirectory, writer);
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error creating archive '" + archive + "'", ex);
         }
 
-        executeMojo(
-            plugin(
-                groupId("org.apache.maven.plugins"),
-                artifactId("maven-assembly-plugin"),
-                version("3.4.2")
-            ),
-            goal("single"),
-            configuration(
-                element(name("attach"), "true"),
-                element(name("appendAssemblyId"), "false"),
-                element(name("tarLongFileMode"), "posix"),
-                element(name("finalName"), finalName),
-                element(name("descriptors"),
-                    element(name("descriptor"), assemblyDescriptorFile.toString())
-                ),
-                element(name("archiverConfig"),
-                    element(name("fileMode"), "0644"),
-                    element(name("directoryMode"), "0755"),
-                    element(name("defaultDirectoryMode"), "0755")
-                )
-            ),
-            executionEnvironment(
-                mavenProject,
-                mavenSession,
-                pluginManager
-            )
-        );
+        mavenProject.getArtifact().setFile(archive);
+    }
+
+    private void copyFileSet(FileSet fileSet, String baseDirectory, Writer writer) throws IOException {
+        val directory = new File(fileSet.getDirectory());
+        if (!directory.isDirectory()) {
+            log.debug("Skipping non-existing directory '" + directory + "'");
+            return;
+        }
+
+        val scanner = new DirectoryScanner();
+        scanner.setBasedir(directory);
+        if (!fileSet.getIncludes().isEmpty())
+            scanner.setIncludes(fileSet.getIncludes().toArray(new String[0]));
+        if (!fileSet.getExcludes().isEmpty())
+            scanner.setExcludes(fileSet.getExcludes().toArray(new String[0]));
+        scanner.addDefaultExcludes();
+        scanner.scan();
+
+        val prefix = joinPath(baseDirectory, fileSet.getOutputDirectory());
+        val directoryMode = DIRECTORY_TYPE | Integer.parseInt(fileSet.getDirectoryMode(), 8);
+        val fileMode = FILE_TYPE | Integer.parseInt(fileSet.getFileMode(), 8);
+        writer.addDirectory(prefix, directoryMode, directory.lastModified());
+        for (String dir : sorted(scanner.getIncludedDirectories())) {
+            writer.addDirectory(joinPath(prefix, dir), directoryMode, new File(directory, dir).lastModified());
+        }
+        for (String name : sorted(scanner.getIncludedFiles())) {
+            val file = new File(directory, name);
+            try (val in = Files.newInputStream(file.toPath())) {
+                writer.addFile(joinPath(prefix, name), fileMode, directoryMode, file.lastModified(), file.length(), in);
+            }
+        }
+    }
+
+    /**
+     * Copies all entries from a single archive, which are selected by any of the given archive sets. Each entry
+     * is assigned to the first set which selects it.
+     */
+    private void copyArchive(List<ArchiveSet> sets, String baseDirectory, Writer writer) throws IOException {
+        val archive = new File(sets.get(0).getArchive());
+        log.info("Copying entries from '" + archive + "'");
+        try (val in = new TarArchiveInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(archive.toPath())), 64 * 1024), "UTF-8")) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextTarEntry()) != null) {
+                val name = StringUtils.removeStart(entry.getName(), "./");
+                for (ArchiveSet set : sets) {
+                    if (!name.startsWith(set.getPrefix()))
+                        continue;
+                    val path = StringUtils.removeEnd(name.substring(set.getPrefix().length()), "/");
+                    if (path.isEmpty() || !isSelected(path, set.getIncludes(), set.getExcludes()))
+                        continue;
+
+                    val target = joinPath(joinPath(baseDirectory, set.getOutputDirectory()), path);
+                    val directoryMode = DIRECTORY_TYPE | Integer.parseInt(set.getDirectoryMode(), 8);
+                    val fileMode = FILE_TYPE | Integer.parseInt(set.getFileMode(), 8);
+                    val modTime = entry.getModTime().getTime();
+                    if (entry.isDirectory()) {
+                        writer.addDirectory(target, directoryMode, modTime);
+                    }
+                    else if (entry.isSymbolicLink()) {
+                        writer.addSymbolicLink(target, entry.getLinkName(), directoryMode, modTime);
+                    }
+                    else if (entry.isFile() && !entry.isLink()) {
+                        writer.addFile(target, fileMode, directoryMode, modTime, entry.getSize(), in);
+                    }
+                    else {
+                        log.warn("Skipping unsupported entry '" + name + "' in archive '" + archive + "'");
+                    }
+                    break;
+                }
+            }
+        }
+    }
 
+    private static boolean isSelected(String path, List<String> includes, List<String> excludes) {
+        val included = includes.isEmpty() || includes.stream().anyMatch(p -> matchPath(p, path));
+        return included
+            && excludes.stream().noneMatch(p -> matchPath(p, path))
+            && Arrays.stream(DirectoryScanner.DEFAULTEXCLUDES).noneMatch(p -> matchPath(p, path));
+    }
+
+    private static boolean matchPath(String pattern, String path) {
+        // Same normalization as performed by DirectoryScanner
+        var normalized = pattern.replace('\\', '/');
+        if (normalized.endsWith("/"))
+            normalized += "**";
+        return SelectorUtils.matchPath(normalized, path, "/", true);
+    }
+
+    private static String joinPath(String parent, String child) {
+        val path = (StringUtils.isEmpty(parent) ? "" : parent + "/") + StringUtils.defaultString(child).replace(File.separatorChar, '/');
+        return StringUtils.strip(path.replaceAll("/+", "/"), "/");
+    }
+
+    private static Collection<String> sorted(String[] paths) {
+        Arrays.sort(paths);
+        return Arrays.asList(paths);
+    }
+
+    /**
+     * Writes entries to a tar archive. Each entry is only written once, and missing parent directories are created
+     * implicitly.
+     */
+    private static class Writer {
+        private final TarArchiveOutputStream out;
+        private final Set<String> names = new HashSet<>();
+
+        Writer(TarArchiveOutputStream out) {
+            this.out = out;
+        }
+
+        void addDirectory(String name, int mode, long modTime) throws IOException {
+            if (name.isEmpty() || names.contains(name + "/"))
+                return;
+            addParents(name, mode, modTime);
+            names.add(name + "/");
+            val entry = new TarArchiveEntry(name + "/");
+            entry.setMode(mode);
+            entry.setModTime(modTime);
+            out.putArchiveEntry(entry);
+            out.closeArchiveEntry();
+        }
+
+        void addFile(String name, int mode, int directoryMode, long modTime, long size, InputStream in) throws IOException {
+            if (!names.add(name))
+                return;
+            addParents(name, directoryMode, modTime);
+            val entry = new TarArchiveEntry(name);
+            entry.setMode(mode);
+            entry.setModTime(modTime);
+            entry.setSize(size);
+            out.putArchiveEntry(entry);
+            IOUtils.copy(in, out);
+            out.closeArchiveEntry();
+        }
+
+        void addSymbolicLink(String name, String linkName, int directoryMode, long modTime) throws IOException {
+            if (!names.add(name))
+                return;
+            addParents(name, directoryMode, modTime);
+            val entry = new TarArchiveEntry(name, TarConstants.LF_SYMLINK);
+            entry.setLinkName(linkName);
+            entry.setMode(SYMLINK_MODE);
+            entry.setModTime(modTime);
+            out.putArchiveEntry(entry);
+            out.closeArchiveEntry();
+        }
+
+        private void addParents(String name, int mode, long modTime) throws IOException {
+            if (name.contains("/"))
+                addDirectory(StringUtils.substringBeforeLast(name, "/"), mode, modTime);
+        }
     }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.val;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.aether.RepositorySystemSession;
+
+import com.dimajix.flowman.maven.plugin.daemon.MainInvoker;
+
+
+/**
+ * Executes main classes within the Maven JVM, using an isolated class loader containing only the given classpath.
+ * Class loaders are cached per classpath within the repository session, such that all classes only need to be loaded
+ * once per build. They need to be released via {@link #close} at the end of the mojo. Since the environment of the
+ * JVM is global, only a single main class is executed at a time.
+ */
+public class InProcessRunner {
+    private static final String CLASS_LOADERS = InProcessRunner.class.getName() + ".classLoaders";
+    private static final Object lock = new Object();
+
+    private InProcessRunner() {
+    }
+
+    /**
+     * Checks if the current JVM supports in-process execution. This requires trapping System.exit via a security
+     * manager and modifying the environment variables via reflection. The check does not install anything.
+     */
+    public static boolean isSupported() {
+        if (!MainInvoker.isExitTrapSupported())
+            return false;
+        try {
+            getModifiableEnvironments();
+            return true;
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes all class loaders which have been created within the repository session
+     */
+    public static void close(RepositorySystemSession repositorySystemSession) {
+        val classLoaders = getClassLoaders(repositorySystemSession);
+        synchronized (classLoaders) {
+            for (URLClassLoader classLoader : classLoaders.values()) {
+                try {
+                    classLoader.close();
+                }
+                catch (IOException ex) {
+                    // Ignore, the class loader is not used anymore
+                }
+            }
+            classLoaders.clear();
+        }
+    }
+
+    public static int run(Log log, RepositorySystemSession repositorySystemSession, String classPath, Map<String,String> environment, String mainClass, List<String> args) throws MojoExecutionException {
+        val classLoader = getClassLoader(repositorySystemSession, classPath);
+        synchronized (lock) {
+            val previousEnvironment = new HashMap<String,String>(System.getenv());
+            setEnvironment(environment, previousEnvironment);
+            if (!MainInvoker.installExitTrap())
+                throw new MojoExecutionException("Cannot install security manager for trapping System.exit");
+            try {
+                val result = MainInvoker.invoke(mainClass, classLoader, args.toArray(new String[0]));
+                if (result.getFailure() != null)
+                    log.error("Uncaught exception in '" + mainClass + "'", result.getFailure());
+                return result.getExitCode();
+            }
+            finally {
+                MainInvoker.uninstallExitTrap();
+                restoreEnvironment(previousEnvironment);
+                System.out.flush();
+                System.err.flush();
+            }
+        }
+    }
+
+    private static URLClassLoader getClassLoader(RepositorySystemSession repositorySystemSession, String classPath) throws MojoExecutionException {
+        val urls = new ArrayList<URL>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            try {
+                urls.add(new File(entry).toURI().toURL());
+            }
+            catch (MalformedURLException ex) {
+                throw new MojoExecutionException("Invalid classpath entry '" + entry + "'", ex);
+            }
+        }
+        // Only use the JDK classes as parent, such that no classes of Maven are visible
+        val parent = ClassLoader.getSystemClassLoader().getParent();
+        val classLoaders = getClassLoaders(repositorySystemSession);
+        synchronized (classLoaders) {
+            return classLoaders.computeIfAbsent(classPath, k -> new URLClassLoader(urls.toArray(new URL[0]), parent));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, URLClassLoader> getClassLoaders(RepositorySystemSession repositorySystemSession) {
+        val data = repositorySystemSession.getData();
+        if (data.get(CLASS_LOADERS) == null)
+            data.set(CLASS_LOADERS, null, new HashMap<String, URLClassLoader>());
+        return (Map<String, URLClassLoader>)data.get(CLASS_LOADERS);
+    }
+
+    private static void setEnvironment(Map<String,String> environment, Map<String,String> previousEnvironment) throws MojoExecutionException {
+        try {
+            for (Map<String,String> env : getModifiableEnvironments()) {
+                env.putAll(previousEnvironment);
+                env.putAll(environment);
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new MojoExecutionException("Cannot modify environment variables for in-process execution", ex);
+        }
+    }
+
+    private static void restoreEnvironment(Map<String,String> previousEnvironment) throws MojoExecutionException {
+        try {
+            for (Map<String,String> env : getModifiableEnvironments()) {
+                env.clear();
+                env.putAll(previousEnvironment);
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new MojoExecutionException("Cannot restore environment variables after in-process execution", ex);
+        }
+    }
+
+    /**
+     * Returns the mutable maps backing System.getenv(). On Windows, an additional case-insensitive copy is used
+     * by System.getenv(String).
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String,String>> getModifiableEnvironments() throws ReflectiveOperationException {
+        val result = new ArrayList<Map<String,String>>();
+        val env = System.getenv();
+        val field = env.getClass().getDeclaredField("m");
+        field.setAccessible(true);
+        result.add((Map<String,String>)field.get(env));
+
+        val processEnvironment = Class.forName("java.lang.ProcessEnvironment");
+        try {
+            val ciField = processEnvironment.getDeclaredField("theCaseInsensitiveEnvironment");
+            ciField.setAccessible(true);
+            result.add((Map<String,String>)ciField.get(null));
+        }
+        catch (NoSuchFieldException ex) {
+            // Not on Windows
+        }
+        return result;
+    }
+}
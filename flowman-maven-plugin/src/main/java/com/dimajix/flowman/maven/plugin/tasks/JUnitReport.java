@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+
+import lombok.Value;
+import lombok.val;
+import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
+
+
+/**
+ * Writes test results in the XML format of the Maven Surefire plugin, which is understood by most CI servers.
+ */
+class JUnitReport {
+    @Value
+    static class TestCase {
+        String name;
+        long duration;
+        // Null for successful tests
+        String failure;
+        // Optional output of the test
+        String output;
+    }
+
+    private JUnitReport() {
+    }
+
+    public static void write(File file, String suiteName, List<TestCase> testCases) throws IOException {
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        try (val writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            val xml = new PrettyPrintXMLWriter(writer);
+            xml.startElement("testsuite");
+            xml.addAttribute("name", suiteName);
+            xml.addAttribute("tests", Integer.toString(testCases.size()));
+            xml.addAttribute("failures", Long.toString(testCases.stream().filter(t -> t.getFailure() != null).count()));
+            xml.addAttribute("errors", "0");
+            xml.addAttribute("skipped", "0");
+            xml.addAttribute("time", seconds(testCases.stream().mapToLong(TestCase::getDuration).sum()));
+            for (TestCase testCase : testCases) {
+                xml.startElement("testcase");
+                xml.addAttribute("name", testCase.getName());
+                xml.addAttribute("classname", suiteName);
+                xml.addAttribute("time", seconds(testCase.getDuration()));
+                if (testCase.getFailure() != null) {
+                    xml.startElement("failure");
+                    xml.addAttribute("message", testCase.getFailure());
+                    xml.endElement();
+                }
+                if (testCase.getOutput() != null) {
+                    xml.startElement("system-out");
+                    xml.writeText(testCase.getOutput());
+                    xml.endElement();
+                }
+                xml.endElement();
+            }
+            xml.endElement();
+            writer.write("\n");
+        }
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+    }
+}
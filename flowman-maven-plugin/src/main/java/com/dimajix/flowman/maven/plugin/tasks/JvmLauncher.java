@@ -0,0 +1,192 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Value;
+import lombok.val;
+import lombok.var;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import com.dimajix.flowman.maven.plugin.util.Checksums;
+
+
+/**
+ * Creates the classpath options for starting new JVMs. On Java 9 and newer, the classpath is passed via an argument
+ * file instead of the command line, which is reused for all JVMs with the same classpath. Optionally, on Java 13
+ * and newer, an AppCDS archive is created by the first JVM and used by all subsequent JVMs with the same classpath
+ * and options, which avoids parsing and verifying all classes again.
+ */
+class JvmLauncher {
+    private static final String ARG_FILE = "classpath.args";
+    private static final String CDS_ARCHIVE = "classes.jsa";
+    private static final Map<String, Integer> javaVersions = new ConcurrentHashMap<>();
+
+    @Value
+    static class ClassPath {
+        List<String> options;
+        // The archive which is created by the JVM when it exits, which is published by finish()
+        File pendingArchive;
+        File archive;
+    }
+
+    private final Log log;
+    private final File cacheDirectory;
+    private final boolean cds;
+
+    /**
+     * @param log the logger to use
+     * @param cacheDirectory the directory containing argument files and CDS archives
+     * @param cds true if AppCDS archives should be created and used
+     */
+    public JvmLauncher(Log log, File cacheDirectory, boolean cds) {
+        this.log = log;
+        this.cacheDirectory = cacheDirectory;
+        this.cds = cds;
+    }
+
+    /**
+     * Returns the options for starting a JVM with the given classpath
+     * @param javaCommand the Java executable followed by all JVM options, but without the classpath
+     * @param classPath the classpath of the JVM
+     */
+    public ClassPath prepare(List<String> javaCommand, String classPath) throws MojoExecutionException {
+        val javaVersion = getJavaVersion(javaCommand.get(0));
+        if (javaVersion < 9)
+            return new ClassPath(Arrays.asList("-classpath", classPath), null, null);
+
+        val directory = new File(cacheDirectory, getFingerprint(javaCommand, classPath));
+        val argFile = new File(directory, ARG_FILE);
+        val options = new ArrayList<String>();
+        try {
+            if (!argFile.isFile()) {
+                Files.createDirectories(directory.toPath());
+                val tmp = new File(directory, ARG_FILE + "." + UUID.randomUUID());
+                Files.write(tmp.toPath(), ("-classpath \"" + escape(classPath) + "\"\n").getBytes(StandardCharsets.UTF_8));
+                Files.move(tmp.toPath(), argFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error writing argument file '" + argFile + "'", ex);
+        }
+        options.add("@" + argFile.getAbsolutePath());
+
+        if (cds && javaVersion >= 13) {
+            val archive = new File(directory, CDS_ARCHIVE);
+            if (archive.isFile()) {
+                log.debug("Using CDS archive '" + archive + "'");
+                options.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+                return new ClassPath(options, null, archive);
+            }
+            else {
+                log.info("Creating CDS archive '" + archive + "'");
+                val pendingArchive = new File(directory, "classes-" + UUID.randomUUID() + ".jsa");
+                options.add("-XX:ArchiveClassesAtExit=" + pendingArchive.getAbsolutePath());
+                return new ClassPath(options, pendingArchive, archive);
+            }
+        }
+        else {
+            return new ClassPath(options, null, null);
+        }
+    }
+
+    /**
+     * Publishes the CDS archive created by a JVM after it has exited
+     */
+    public void finish(ClassPath classPath) {
+        val pendingArchive = classPath.getPendingArchive();
+        if (pendingArchive == null || !pendingArchive.isFile())
+            return;
+        try {
+            // Multiple JVMs might have created an archive in parallel, the first one wins
+            Files.move(pendingArchive.toPath(), classPath.getArchive().toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (FileAlreadyExistsException ex) {
+            // Ignore
+        }
+        catch (IOException ex) {
+            log.warn("Cannot store CDS archive '" + classPath.getArchive() + "': " + ex.getMessage());
+        }
+        pendingArchive.delete();
+    }
+
+    /**
+     * Returns the major version of the given Java executable, which is cached for the lifetime of the Maven JVM
+     */
+    private int getJavaVersion(String java) {
+        return javaVersions.computeIfAbsent(java, k -> {
+            try {
+                val process = new ProcessBuilder(java, "-XshowSettings:properties", "-version").redirectErrorStream(true).start();
+                var version = 8;
+                try (val reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        val trimmed = line.trim();
+                        if (trimmed.startsWith("java.specification.version = ")) {
+                            val value = trimmed.substring("java.specification.version = ".length());
+                            version = value.startsWith("1.") ? Integer.parseInt(value.substring(2)) : Integer.parseInt(value);
+                        }
+                    }
+                }
+                process.waitFor();
+                log.debug("Detected Java version " + version + " of '" + java + "'");
+                return version;
+            }
+            catch (IOException | NumberFormatException ex) {
+                log.warn("Cannot determine Java version of '" + java + "': " + ex.getMessage());
+                return 8;
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return 8;
+            }
+        });
+    }
+
+    /**
+     * Creates a fingerprint of the JVM options and the classpath. CDS archives are only valid for unchanged jars,
+     * therefore the size and modification time of all jars are also included.
+     */
+    private static String getFingerprint(List<String> javaCommand, String classPath) {
+        val digest = Checksums.newDigest();
+        javaCommand.forEach(arg -> Checksums.update(digest, arg));
+        for (String entry : classPath.split(File.pathSeparator)) {
+            val file = new File(entry);
+            Checksums.update(digest, entry + ":" + file.length() + ":" + file.lastModified());
+        }
+        return Checksums.toHex(digest.digest()).substring(0, 32);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
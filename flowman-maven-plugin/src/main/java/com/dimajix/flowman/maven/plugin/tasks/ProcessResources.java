@@ -17,54 +17,214 @@
 package com.dimajix.flowman.maven.plugin.tasks;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
+import lombok.val;
+import lombok.var;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.DirectoryScanner;
 
-import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
-
+import com.dimajix.flowman.maven.plugin.interpolation.StringInterpolator;
 import com.dimajix.flowman.maven.plugin.model.Package;
 import com.dimajix.flowman.maven.plugin.mojos.FlowmanMojo;
+import com.dimajix.flowman.maven.plugin.util.Checksums;
+import com.dimajix.flowman.maven.plugin.util.FingerprintStore;
 
 public class ProcessResources extends Task {
+    private static final String DELIMITER = ResourceFilter.DELIMITER;
+    // Same defaults as used by maven-resources-plugin
+    private static final List<String> NON_FILTERED_EXTENSIONS = Arrays.asList("jpg", "jpeg", "gif", "bmp", "png");
+
+    private final Log log;
+
     public ProcessResources(FlowmanMojo mojo, MavenProject mavenProject) throws MojoFailureException {
         super(mojo, mavenProject);
+        this.log = mojo.getLog();
     }
 
     public void processResources(File sources, File outputDirectory) throws MojoExecutionException {
         processResources(Collections.singletonList(sources), outputDirectory);
     }
 
+    /**
+     * Copies and filters all files from the given source directories into the output directory. The processing is
+     * incremental, i.e. only files whose content or whose referenced properties have changed since the last build
+     * are processed again, and output files whose sources have been removed are deleted.
+     */
     public void processResources(Collection<File> sources, File outputDirectory) throws MojoExecutionException {
-        executeMojo(
-            plugin(
-                groupId("org.apache.maven.plugins"),
-                artifactId("maven-resources-plugin"),
-                version("3.3.0")
-            ),
-            goal("resources"),
-            configuration(
-                element(name("propertiesEncoding"), "ISO-8859-1"),
-                element(name("delimiters"), element(name("delimiter"), "@")),
-                element(name("useDefaultDelimiters"), "false"),
-                element(name("outputDirectory"), outputDirectory.toString()),
-                element(name("resources"), sources.stream().map(src ->
-                        element(name("resource"),
-                            element(name("directory"), src.toString()),
-                            element(name("targetPath"), new File(outputDirectory, src.getName()).toString()),
-                            element(name("filtering"), "true")
-                        )
-                    ).toArray(Element[]::new)
-                )
-            ),
-            executionEnvironment(
-                mavenProject,
-                mavenSession,
-                pluginManager
-            )
-        );
+        val store = loadFingerprints();
+        val filter = new ResourceFilter(StringInterpolator.createInterpolator(mavenSession, mavenProject));
+
+        val resources = new LinkedList<ResourceFilter.Resource>();
+        val fingerprints = new HashMap<String,String>();
+        for (File src : sources) {
+            val sourceDirectory = src.isAbsolute() ? src : new File(mavenProject.getBasedir(), src.getPath());
+            val targetDirectory = new File(outputDirectory, src.getName());
+            val files = scanFiles(sourceDirectory);
+
+            // Find all files which have been changed
+            val changedFiles = new LinkedList<String>();
+            val currentKeys = new HashSet<String>();
+            for (String file : files) {
+                val target = new File(targetDirectory, file);
+                val key = getKey(target);
+                val fingerprint = fingerprint(new File(sourceDirectory, file), filter);
+                if (!fingerprint.equals(getSourceFingerprint(store.get(key))) || !stamp(target).equals(getTargetStamp(store.get(key)))) {
+                    changedFiles.add(file);
+                }
+                fingerprints.put(key, fingerprint);
+                currentKeys.add(key);
+            }
+
+            // Remove all output files whose sources do not exist any more
+            val prefix = getKey(targetDirectory) + "/";
+            for (String key : new LinkedList<>(store.keys())) {
+                if (key.startsWith(prefix) && !currentKeys.contains(key)) {
+                    val target = new File(buildDirectory, key);
+                    log.debug("Removing stale resource '" + target + "'");
+                    if (target.exists() && !target.delete()) {
+                        throw new MojoExecutionException("Cannot remove stale resource '" + target + "'");
+                    }
+                    // Also remove directories which became empty
+                    var parent = target.getParentFile();
+                    while (parent != null && !parent.equals(targetDirectory) && parent.delete()) {
+                        parent = parent.getParentFile();
+                    }
+                    store.remove(key);
+                }
+            }
+
+            if (!changedFiles.isEmpty()) {
+                log.info("Processing " + changedFiles.size() + " of " + files.size() + " resources in '" + src + "'");
+                for (String file : changedFiles) {
+                    resources.add(createResource(new File(sourceDirectory, file), new File(targetDirectory, file)));
+                }
+            }
+            else {
+                log.info("All " + files.size() + " resources in '" + src + "' are up to date");
+            }
+        }
+
+        try {
+            filter.filter(resources);
+        }
+        catch (IOException|RuntimeException ex) {
+            throw new MojoExecutionException("Error processing resources: " + ex.getMessage(), ex);
+        }
+
+        // Record fingerprints of all sources together with the state of the generated files
+        for (Map.Entry<String,String> entry : fingerprints.entrySet()) {
+            val target = new File(buildDirectory, entry.getKey());
+            store.put(entry.getKey(), entry.getValue() + ";" + stamp(target));
+        }
+        try {
+            store.save();
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error writing fingerprints '" + store.getFile() + "'", ex);
+        }
+    }
+
+    private FingerprintStore loadFingerprints() throws MojoExecutionException {
+        val file = new File(buildDirectory, "resources.fingerprints");
+        try {
+            return FingerprintStore.load(file);
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error reading fingerprints '" + file + "'", ex);
+        }
+    }
+
+    private ResourceFilter.Resource createResource(File source, File target) {
+        // Same as maven-resources-plugin, properties files use a different encoding
+        val encoding = source.getName().endsWith(".properties") ? StandardCharsets.ISO_8859_1 : getEncoding();
+        return new ResourceFilter.Resource(source, target, encoding, isFiltered(source));
+    }
+
+    private Charset getEncoding() {
+        val encoding = mavenProject.getProperties().getProperty("project.build.sourceEncoding");
+        return StringUtils.isEmpty(encoding) ? Charset.defaultCharset() : Charset.forName(encoding);
+    }
+
+    private static boolean isFiltered(File file) {
+        return !NON_FILTERED_EXTENSIONS.contains(StringUtils.substringAfterLast(file.getName(), ".").toLowerCase());
+    }
+
+    private List<String> scanFiles(File directory) {
+        if (!directory.isDirectory())
+            return Collections.emptyList();
+
+        val scanner = new DirectoryScanner();
+        scanner.setBasedir(directory);
+        scanner.addDefaultExcludes();
+        scanner.scan();
+        return Arrays.asList(scanner.getIncludedFiles());
+    }
+
+    /**
+     * Creates a fingerprint of a single file, which contains its content and the values of all properties it
+     * references. This way, a file will only be processed again, if it has changed or if any relevant property has
+     * changed.
+     */
+    private String fingerprint(File file, ResourceFilter filter) throws MojoExecutionException {
+        try {
+            val bytes = Files.readAllBytes(file.toPath());
+            val digest = Checksums.newDigest();
+            digest.update(bytes);
+            if (isFiltered(file)) {
+                // Resolve all potential tokens. Since the encoding is not relevant for the delimiter, we simply use
+                // ISO-8859-1, which maps all bytes 1:1 to chars
+                val text = new String(bytes, StandardCharsets.ISO_8859_1);
+                val lines = StringUtils.split(text, "\r\n");
+                for (String line : lines) {
+                    int start = line.indexOf(DELIMITER);
+                    while (start >= 0) {
+                        val end = line.indexOf(DELIMITER, start + 1);
+                        if (end < 0)
+                            break;
+                        val token = line.substring(start, end + 1);
+                        Checksums.update(digest, token);
+                        Checksums.update(digest, filter.resolve(token));
+                        start = end;
+                    }
+                }
+            }
+            return Checksums.toHex(digest.digest());
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error reading resource '" + file + "'", ex);
+        }
+    }
+
+    private String getKey(File target) {
+        val path = buildDirectory.toPath().toAbsolutePath().relativize(target.toPath().toAbsolutePath());
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    private static String stamp(File file) {
+        return file.exists() ? file.length() + ":" + file.lastModified() : "";
+    }
+
+    private static String getSourceFingerprint(String entry) {
+        return StringUtils.substringBefore(entry, ";");
+    }
+
+    private static String getTargetStamp(String entry) {
+        return StringUtils.substringAfter(entry, ";");
     }
 }
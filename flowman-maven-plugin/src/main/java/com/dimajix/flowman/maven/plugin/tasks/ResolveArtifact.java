@@ -16,9 +16,15 @@
 
 package com.dimajix.flowman.maven.plugin.tasks;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import lombok.val;
 import org.apache.maven.artifact.Artifact;
@@ -31,15 +37,20 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.transfer.artifact.DefaultArtifactCoordinate;
 import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
 import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolverException;
+import org.eclipse.aether.RepositorySystemSession;
 
 import com.dimajix.flowman.maven.fs.FileSystem;
 import com.dimajix.flowman.maven.plugin.model.Package;
 import com.dimajix.flowman.maven.plugin.mojos.FlowmanMojo;
+import com.dimajix.flowman.maven.plugin.util.Checksums;
 
 public class ResolveArtifact extends Task {
+    private static final String RESOLUTION_CACHE = ResolveArtifact.class.getName() + ".resolutionCache";
+
     private final Log log;
     private final ArtifactResolver artifactResolver;
     private final ArtifactHandlerManager artifactHandlerManager;
+    private final File checksumsFile;
 
     public ResolveArtifact(FlowmanMojo mojo, MavenProject mavenProject) throws MojoFailureException {
         super(mojo, mavenProject);
@@ -47,34 +58,57 @@ public class ResolveArtifact extends Task {
         this.log = mojo.getLog();
         this.artifactResolver = mojo.getArtifactResolver();
         this.artifactHandlerManager = mojo.getArtifactHandlerManager();
+        this.checksumsFile = mojo.getChecksumsFile();
     }
 
+    /**
+     * Resolves an artifact from the Maven repositories, unless it has been built within the current session. Results
+     * are cached within the repository session, such that each artifact is only resolved once.
+     */
     public Artifact resolve(Artifact artifact) throws MojoExecutionException {
-        ArtifactHandler artifactHandler = artifactHandlerManager.getArtifactHandler(artifact.getType());
-        DefaultArtifactCoordinate artifactCoordinate = new DefaultArtifactCoordinate();
-        artifactCoordinate.setGroupId(artifact.getGroupId());
-        artifactCoordinate.setArtifactId(artifact.getArtifactId());
-        artifactCoordinate.setVersion(artifact.getVersion());
-        artifactCoordinate.setClassifier(artifact.getClassifier());
-        artifactCoordinate.setExtension(artifactHandler.getExtension());
+        if (artifact.getFile() != null && artifact.getFile().exists())
+            return artifact;
 
-        val buildingRequest = mavenSession.getProjectBuildingRequest();
+        val cache = getResolutionCache(mavenSession.getRepositorySession());
+        val entry = cache.computeIfAbsent(artifact.getId(), k -> new AtomicReference<>());
+        synchronized (entry) {
+            if (entry.get() == null) {
+                ArtifactHandler artifactHandler = artifactHandlerManager.getArtifactHandler(artifact.getType());
+                DefaultArtifactCoordinate artifactCoordinate = new DefaultArtifactCoordinate();
+                artifactCoordinate.setGroupId(artifact.getGroupId());
+                artifactCoordinate.setArtifactId(artifact.getArtifactId());
+                artifactCoordinate.setVersion(artifact.getVersion());
+                artifactCoordinate.setClassifier(artifact.getClassifier());
+                artifactCoordinate.setExtension(artifactHandler.getExtension());
 
-        try {
-            if (artifact.getFile() == null || !artifact.getFile().exists()) {
-                val result = artifactResolver.resolveArtifact(buildingRequest, artifactCoordinate);
-                artifact.setFile(result.getArtifact().getFile());
-                return result.getArtifact();
-            }
-            else {
-                return artifact;
+                val buildingRequest = mavenSession.getProjectBuildingRequest();
+
+                try {
+                    val result = artifactResolver.resolveArtifact(buildingRequest, artifactCoordinate);
+                    entry.set(result.getArtifact());
+                } catch (ArtifactResolverException ex) {
+                    throw new MojoExecutionException("Error resolving artifact '" + artifact.getId() + "'", ex);
+                }
             }
-        } catch (ArtifactResolverException ex) {
-            throw new MojoExecutionException("Error resolving artifact '" + artifact.getId() + "'", ex);
+            artifact.setFile(entry.get().getFile());
+            return entry.get();
         }
     }
 
-    public void copy(Artifact artifact, URI targetLocation) throws MojoExecutionException {
+    @SuppressWarnings("unchecked")
+    private static Map<String, AtomicReference<Artifact>> getResolutionCache(RepositorySystemSession repositorySystemSession) {
+        val data = repositorySystemSession.getData();
+        if (data.get(RESOLUTION_CACHE) == null)
+            data.set(RESOLUTION_CACHE, null, new ConcurrentHashMap<String, AtomicReference<Artifact>>());
+        return (Map<String, AtomicReference<Artifact>>)data.get(RESOLUTION_CACHE);
+    }
+
+    /**
+     * Copies an artifact to a target location, together with a sidecar file {@code <artifact>.sha256} containing its
+     * checksum. The upload is skipped if the target already contains an artifact with the same size and checksum.
+     * Returns the number of bytes transferred.
+     */
+    public long copy(Artifact artifact, URI targetLocation) throws MojoExecutionException {
         val artifact2 = resolve(artifact);
 
         // Copy artifact to target location
@@ -82,8 +116,18 @@ public class ResolveArtifact extends Task {
             val source = artifact2.getFile();
             val target = new URI(targetLocation + "/").resolve(source.getName());
             val fs = FileSystem.getFileSystem(target.getScheme());
+            val checksum = Checksums.cachedSha256(source, checksumsFile);
+            if (isUnchanged(fs, target, source, checksum)) {
+                log.info("Skipping " + source + ", which is unchanged at " + target);
+                return 0;
+            }
+
             log.info("Copying " + source + " to " + target);
+            // Remove the old sidecar first, such that a failed upload never leaves a stale checksum next to the artifact
+            fs.delete(new URI(target + ".sha256"), false);
             fs.put(target, source);
+            putChecksum(fs, target, source, checksum);
+            return source.length();
         }
         catch(URISyntaxException ex) {
             throw new MojoExecutionException("Error copying artifact '" + artifact.getId() + "' to '" + targetLocation + "'", ex);
@@ -92,4 +136,31 @@ public class ResolveArtifact extends Task {
             throw new MojoExecutionException("Error copying artifact '" + artifact.getId() + "' to '" + targetLocation + "'", ex);
         }
     }
+
+    private boolean isUnchanged(FileSystem fs, URI target, File source, String checksum) throws IOException {
+        try {
+            val status = fs.stat(target);
+            if (status == null || status.isDirectory() || status.getSize() != source.length())
+                return false;
+            return checksum.equals(fs.checksum(target));
+        }
+        catch (UnsupportedOperationException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Stores the checksum in a sidecar file. This is written after the artifact itself, such that the sidecar never
+     * refers to an artifact which has not been completely uploaded.
+     */
+    private void putChecksum(FileSystem fs, URI target, File source, String checksum) throws IOException, URISyntaxException {
+        val file = File.createTempFile("flowman-checksum", ".sha256");
+        try {
+            Files.write(file.toPath(), (checksum + "  " + source.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+            fs.put(new URI(target + ".sha256"), file);
+        }
+        finally {
+            file.delete();
+        }
+    }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import lombok.Value;
+import lombok.val;
+import org.apache.maven.shared.filtering.FilteringUtils;
+import org.codehaus.plexus.interpolation.fixed.FixedStringSearchInterpolator;
+
+
+/**
+ * Streaming implementation of the {@code @token@} filtering as performed by the maven-resources-plugin. The
+ * tokenization closely follows the behaviour of maven-filtering, while the values are resolved by a
+ * {@link FixedStringSearchInterpolator}. Resolved tokens are cached, such that each distinct token only needs to be
+ * interpolated once, even if it is used in thousands of files.
+ */
+public class ResourceFilter {
+    public static final String DELIMITER = "@";
+    private static final char DELIMITER_CHAR = '@';
+    // Longest token name which is still accepted by maven-filtering
+    private static final int MAX_TOKEN_LENGTH = 258;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Value
+    public static class Resource {
+        File source;
+        File target;
+        Charset encoding;
+        boolean filtering;
+    }
+
+    private final FixedStringSearchInterpolator interpolator;
+    private final Map<String,String> tokens = new ConcurrentHashMap<>();
+
+    public ResourceFilter(FixedStringSearchInterpolator interpolator) {
+        this.interpolator = interpolator
+            .withExpressionMarkers(DELIMITER, DELIMITER)
+            .withPostProcessor((expression, value) -> value instanceof String ? FilteringUtils.escapeWindowsPath((String)value) : value);
+    }
+
+    /**
+     * Resolves a single token including its delimiters. Unknown tokens are returned unchanged.
+     */
+    public String resolve(String token) {
+        return tokens.computeIfAbsent(token, interpolator::interpolate);
+    }
+
+    public String filter(String text) {
+        val writer = new StringWriter(text.length());
+        try {
+            filter(new StringReader(text), writer);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return writer.toString();
+    }
+
+    public void filter(Reader reader, Writer writer) throws IOException {
+        val buffer = new char[BUFFER_SIZE];
+        int length = 0;
+        while (true) {
+            val count = reader.read(buffer, length, buffer.length - length);
+            val eof = count < 0;
+            if (!eof)
+                length += count;
+            val consumed = filter(buffer, length, eof, writer);
+            System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+            length -= consumed;
+            if (eof)
+                break;
+        }
+    }
+
+    /**
+     * Filters the given buffer and returns the number of consumed characters. Characters at the end of the buffer
+     * which might belong to a token are only consumed at the end of the input.
+     */
+    private int filter(char[] buffer, int length, boolean eof, Writer writer) throws IOException {
+        int start = 0;
+        int pos = 0;
+        while (pos < length) {
+            if (buffer[pos] != DELIMITER_CHAR) {
+                pos++;
+                continue;
+            }
+
+            // Search closing delimiter. Tokens may not span multiple lines
+            val limit = pos + MAX_TOKEN_LENGTH + 2;
+            int end = pos + 1;
+            while (end < length && end < limit && buffer[end] != DELIMITER_CHAR && buffer[end] != '\n')
+                end++;
+
+            if (end < length && end < limit && buffer[end] == DELIMITER_CHAR) {
+                writer.write(buffer, start, pos - start);
+                writer.write(resolve(new String(buffer, pos, end - pos + 1)));
+                pos = end + 1;
+                start = pos;
+            }
+            else if (end == length && end < limit && !eof) {
+                // Wait for more data
+                break;
+            }
+            else {
+                pos++;
+            }
+        }
+        writer.write(buffer, start, pos - start);
+        return pos;
+    }
+
+    public void filter(Resource resource) throws IOException {
+        val target = resource.getTarget().toPath();
+        Files.createDirectories(target.getParent());
+        if (resource.isFiltering()) {
+            // Replace the target instead of overwriting it, since it may be a hard link into a shared cache
+            Files.deleteIfExists(target);
+            try (val reader = Files.newBufferedReader(resource.getSource().toPath(), resource.getEncoding());
+                 val writer = Files.newBufferedWriter(target, resource.getEncoding())) {
+                filter(reader, writer);
+            }
+        }
+        else {
+            Files.copy(resource.getSource().toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Processes all resources in parallel using a fork-join pool.
+     */
+    public void filter(Collection<Resource> resources) throws IOException {
+        try {
+            ForkJoinPool.commonPool().submit(() -> resources.parallelStream().forEach(resource -> {
+                try {
+                    filter(resource);
+                }
+                catch (IOException ex) {
+                    throw new UncheckedIOException("Error filtering resource '" + resource.getSource() + "'", ex);
+                }
+            })).get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while filtering resources", ex);
+        }
+        catch (ExecutionException ex) {
+            val cause = ex.getCause();
+            if (cause instanceof UncheckedIOException)
+                throw new IOException(cause.getMessage(), cause.getCause());
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            throw new IOException(cause);
+        }
+    }
+}
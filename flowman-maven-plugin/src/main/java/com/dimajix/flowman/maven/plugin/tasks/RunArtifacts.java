@@ -16,26 +16,54 @@
 
 package com.dimajix.flowman.maven.plugin.tasks;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
+import lombok.Value;
 import lombok.val;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 
-import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 
+import com.dimajix.flowman.maven.plugin.daemon.DaemonClient;
 import com.dimajix.flowman.maven.plugin.model.ExecutionSettings;
-import com.dimajix.flowman.maven.plugin.model.Package;
 import com.dimajix.flowman.maven.plugin.mojos.FlowmanMojo;
 import com.dimajix.flowman.maven.plugin.util.Collections;
+import com.dimajix.flowman.maven.plugin.util.FingerprintStore;
+import com.dimajix.flowman.maven.plugin.util.TimingStore;
 
 
 public class RunArtifacts extends Task {
+    private static final String DRIVER_CLASS = "com.dimajix.flowman.tools.exec.Driver";
+
+    private final Log log;
+    private final DaemonClient daemon;
+    private final JvmLauncher launcher;
+    private final boolean inProcess;
+    private final int threadCount;
+    private final File timingsDirectory;
+    private final boolean incrementalTests;
     private final File homeDirectory;
     private final File confDirectory;
     private final ExecutionSettings executionSettings;
@@ -57,31 +85,516 @@ public class RunArtifacts extends Task {
         "-Djdk.reflect.useDirectMethodHandle=false"
     };
 
+    /**
+     * A single execution of Flowman, either testing a whole project or only a selection of its tests
+     */
+    @Value
+    private static class TestRun {
+        File projectDirectory;
+        String name;
+        // All tests executed by this run (if known)
+        List<String> tests;
+        // True if only the tests above should be executed
+        boolean selective;
+    }
+
+    @Value
+    private static class Result {
+        TestRun run;
+        int exitCode;
+        long duration;
+    }
+
+    /**
+     * Logs all output line by line with a prefix
+     */
+    private static class LogOutputStream extends OutputStream {
+        private final Log log;
+        private final String prefix;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        LogOutputStream(Log log, String prefix) {
+            this.log = log;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                val text = line.toString();
+                log.info(prefix + (text.endsWith("\r") ? text.substring(0, text.length() - 1) : text));
+                line.reset();
+            }
+            else {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (line.size() > 0)
+                write('\n');
+        }
+    }
 
-    public RunArtifacts(FlowmanMojo mojo, MavenProject mavenProject, ExecutionSettings executionSettings) throws MojoFailureException {
+
+    public RunArtifacts(FlowmanMojo mojo, MavenProject mavenProject, ExecutionSettings executionSettings) throws MojoFailureException, MojoExecutionException {
         super(mojo, mavenProject);
+        this.log = mojo.getLog();
+        this.daemon = createDaemonClient(mojo);
+        this.launcher = new JvmLauncher(log, new File(mojo.getCacheDirectory(), "jvm"), mojo.isCds());
+        this.inProcess = mojo.isInProcess();
+        this.threadCount = mojo.getThreadCount();
+        this.timingsDirectory = mojo.getTimingsDirectory();
+        this.incrementalTests = mojo.isIncrementalTests();
         this.confDirectory = null;
         this.homeDirectory = null;
         this.executionSettings = executionSettings;
     }
 
-    public RunArtifacts(FlowmanMojo mojo, MavenProject mavenProject, File homeDirectory, File confDirectory, ExecutionSettings executionSettings) throws MojoFailureException {
+    public RunArtifacts(FlowmanMojo mojo, MavenProject mavenProject, File homeDirectory, File confDirectory, ExecutionSettings executionSettings) throws MojoFailureException, MojoExecutionException {
         super(mojo, mavenProject);
+        this.log = mojo.getLog();
+        this.daemon = createDaemonClient(mojo);
+        this.launcher = new JvmLauncher(log, new File(mojo.getCacheDirectory(), "jvm"), mojo.isCds());
+        this.inProcess = mojo.isInProcess();
+        this.threadCount = mojo.getThreadCount();
+        this.timingsDirectory = mojo.getTimingsDirectory();
+        this.incrementalTests = mojo.isIncrementalTests();
         this.homeDirectory = homeDirectory;
         this.confDirectory = confDirectory;
         this.executionSettings = executionSettings;
     }
 
     public void runTests(File projectDirectory) throws MojoExecutionException, MojoFailureException {
-        run("com.dimajix.flowman.tools.exec.Driver", projectDirectory, "test", "run");
+        runTests(singletonList(projectDirectory), 1, 1);
+    }
+
+    /**
+     * Runs the tests of multiple Flowman projects, each in its own JVM. When more than a single fork is requested,
+     * multiple JVMs are executed in parallel and their output is prefixed with the name of the project. The tests of
+     * a single project can also be split into multiple shards, which are balanced by the durations of previous runs
+     * and executed in separate JVMs. All projects are tested, even if some of them fail, and a summary is printed at
+     * the end. Test results are also written as JUnit XML reports.
+     *
+     * The durations of all projects and tests are stored, such that the slowest runs can be started first by
+     * subsequent builds. This minimizes the total time when running multiple Flowman processes in parallel.
+     *
+     * With incremental tests, projects are skipped if neither the project itself nor Flowman, its configuration or
+     * the execution settings have changed since the last successful run.
+     */
+    public void runTests(List<File> projectDirectories, int forkCount, int testShards) throws MojoExecutionException, MojoFailureException {
+        val classPath = getClassPath();
+        val fingerprints = incrementalTests ? loadFingerprints() : null;
+        val currentFingerprints = new HashMap<File, String>();
+        val testedProjects = new ArrayList<File>();
+        val cachedProjects = new ArrayList<File>();
+        for (File projectDirectory : projectDirectories) {
+            if (fingerprints != null) {
+                val fingerprint = getTestFingerprint(classPath, projectDirectory);
+                currentFingerprints.put(projectDirectory, fingerprint);
+                if (fingerprint.equals(fingerprints.get(getProjectKey(projectDirectory)))) {
+                    log.info("Skipping tests of Flowman project '" + projectDirectory.getName() + "', since nothing has changed since the last successful run");
+                    cachedProjects.add(projectDirectory);
+                    continue;
+                }
+            }
+            testedProjects.add(projectDirectory);
+        }
+
+        val timings = loadTimings();
+        val runs = createTestRuns(testedProjects, testShards, timings);
+        val estimates = new HashMap<TestRun, Long>();
+        runs.forEach(run -> estimates.put(run, estimateDuration(run, timings)));
+        val forks = Math.min(forkCount, runs.size());
+        val inProcess = this.inProcess && isInProcessSupported(forks);
+        val results = new ArrayList<Result>();
+        if (forks <= 1) {
+            for (TestRun run : runs) {
+                if (inProcess)
+                    results.add(runTestInProcess(classPath, run));
+                else
+                    results.add(runTest(classPath, run, null));
+            }
+        }
+        else {
+            log.info("Executing " + runs.size() + " Flowman test runs with " + forks + " parallel processes");
+            val executor = Executors.newFixedThreadPool(forks);
+            try {
+                // Start the slowest runs first, runs without any previous duration are assumed to be slow
+                val schedule = new ArrayList<TestRun>(runs);
+                schedule.sort(Comparator.comparing(estimates::get, Comparator.nullsFirst(Comparator.<Long>reverseOrder())));
+                val futures = new HashMap<TestRun, Future<Result>>();
+                for (TestRun run : schedule) {
+                    val prefix = "[" + run.getName() + "] ";
+                    futures.put(run, executor.submit(() -> runTest(classPath, run, prefix)));
+                }
+                for (TestRun run : runs) {
+                    try {
+                        results.add(futures.get(run).get());
+                    }
+                    catch (ExecutionException ex) {
+                        val cause = ex.getCause();
+                        if (cause instanceof MojoExecutionException)
+                            throw (MojoExecutionException)cause;
+                        throw new MojoExecutionException("Error testing Flowman project '" + run.getProjectDirectory() + "'", cause);
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new MojoExecutionException("Interrupted while testing Flowman project '" + run.getProjectDirectory() + "'", ex);
+                    }
+                }
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+
+        updateTimings(results, timings);
+        if (fingerprints != null)
+            updateFingerprints(fingerprints, currentFingerprints, results);
+        writeReports(results);
+        reportResults(results, cachedProjects, estimates);
     }
 
     public void runShell(File projectDirectory) throws MojoExecutionException, MojoFailureException {
-        run("com.dimajix.flowman.tools.shell.Shell", projectDirectory);
+        val classPath = launcher.prepare(getJavaCommand(), getClassPath());
+        val process = createProcess(classPath, "com.dimajix.flowman.tools.shell.Shell", projectDirectory);
+        val exitCode = execute(process.inheritIO(), projectDirectory, null);
+        launcher.finish(classPath);
+        if (exitCode != 0)
+            throw new MojoExecutionException("Flowman shell failed with exit code " + exitCode);
     }
 
-    public void run(String mainClass, File projectDirectory, String... args) throws MojoExecutionException, MojoFailureException {
-        // Construct classpath
+    private List<TestRun> createTestRuns(List<File> projectDirectories, int testShards, TimingStore timings) {
+        val runs = new ArrayList<TestRun>();
+        for (File projectDirectory : projectDirectories) {
+            if (testShards <= 1) {
+                runs.add(new TestRun(projectDirectory, projectDirectory.getName(), emptyList(), false));
+                continue;
+            }
+
+            // Sharded runs only execute the discovered tests, therefore projects whose tests cannot be discovered
+            // completely are tested as a whole
+            List<String> tests;
+            try {
+                tests = TestShards.discoverTests(projectDirectory);
+            }
+            catch (IOException ex) {
+                log.warn("Cannot discover tests of Flowman project '" + projectDirectory.getName() + "', running all tests without sharding: " + ex.getMessage());
+                tests = emptyList();
+            }
+
+            val shardCount = Math.min(testShards, tests.size());
+            if (shardCount <= 1) {
+                runs.add(new TestRun(projectDirectory, projectDirectory.getName(), emptyList(), false));
+            }
+            else {
+                // Tests without a measured duration are assumed to take as long as the average measured test
+                val defaultDuration = getDefaultDuration(projectDirectory, tests, timings);
+                val shards = TestShards.partition(tests, shardCount, test -> {
+                    val duration = timings.get(getTimingKey(projectDirectory, test));
+                    return duration != null ? duration : defaultDuration;
+                });
+                log.info("Splitting " + tests.size() + " tests of Flowman project '" + projectDirectory.getName() + "' into " + shards.size() + " shards");
+                for (int i = 0; i < shards.size(); ++i)
+                    runs.add(new TestRun(projectDirectory, projectDirectory.getName() + "#" + (i + 1), shards.get(i), true));
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Returns the expected duration of a run based on previous runs, or null if nothing is known about it. Only
+     * measured durations are used, i.e. of a previous run of the whole project, of a shard with the same tests, or
+     * of all tests of the shard, each measured in a shard of its own.
+     */
+    private Long estimateDuration(TestRun run, TimingStore timings) {
+        val duration = timings.get(getTimingKey(run));
+        if (duration != null || !run.isSelective())
+            return duration;
+        val durations = run.getTests().stream()
+            .map(test -> timings.get(getTimingKey(run.getProjectDirectory(), test)))
+            .collect(Collectors.toList());
+        if (durations.contains(null))
+            return null;
+        return durations.stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Returns the file storing the durations of previous runs. Per default, this file is stored in the build
+     * directory of the package, but it can also be stored in a shared directory, such that it survives clean builds.
+     */
+    private File getTimingsFile() {
+        if (timingsDirectory != null)
+            return new File(timingsDirectory, mavenProject.getArtifactId() + "-" + buildDirectory.getName() + "-test-timings.properties");
+        else
+            return new File(buildDirectory, "test-timings.properties");
+    }
+
+    /**
+     * Returns a fingerprint of all inputs of the tests of a single project
+     */
+    private String getTestFingerprint(String classPath, File projectDirectory) throws MojoExecutionException {
+        val settings = new ArrayList<String>(getJavaCommand());
+        settings.addAll(getFlowmanArgs(projectDirectory));
+        new TreeMap<String,String>(getEnvironment()).forEach((k, v) -> settings.add(k + "=" + v));
+        val directories = new ArrayList<File>();
+        directories.add(projectDirectory);
+        if (confDirectory != null)
+            directories.add(confDirectory);
+        List<File> installations = homeDirectory != null ? singletonList(homeDirectory) : emptyList();
+        try {
+            return TestFingerprints.fingerprint(settings, classPath, directories, installations);
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error creating fingerprint of Flowman project '" + projectDirectory + "'", ex);
+        }
+    }
+
+    private FingerprintStore loadFingerprints() throws MojoExecutionException {
+        val file = new File(buildDirectory, "tests.fingerprints");
+        try {
+            return FingerprintStore.load(file);
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error reading fingerprints '" + file + "'", ex);
+        }
+    }
+
+    /**
+     * Stores the fingerprints of all projects whose tests were successful, and removes all others
+     */
+    private void updateFingerprints(FingerprintStore store, Map<File, String> fingerprints, List<Result> results) throws MojoExecutionException {
+        val projects = results.stream().collect(Collectors.groupingBy(r -> r.getRun().getProjectDirectory()));
+        for (Map.Entry<File, List<Result>> project : projects.entrySet()) {
+            val name = getProjectKey(project.getKey());
+            if (project.getValue().stream().allMatch(r -> r.getExitCode() == 0))
+                store.put(name, fingerprints.get(project.getKey()));
+            else
+                store.remove(name);
+        }
+        try {
+            store.save();
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error writing fingerprints '" + store.getFile() + "'", ex);
+        }
+    }
+
+    private TimingStore loadTimings() {
+        val file = getTimingsFile();
+        try {
+            return TimingStore.load(file);
+        }
+        catch (IOException ex) {
+            log.warn("Cannot read test timings from '" + file + "': " + ex.getMessage());
+            return TimingStore.empty(file);
+        }
+    }
+
+    /**
+     * Stores the measured duration of each run. Since Flowman only reports the result of a whole run, durations are
+     * stored per project for unsharded runs and per shard (identified by its tests) for sharded runs. The duration of
+     * a single test is therefore only known once it has been executed in a shard of its own.
+     */
+    private void updateTimings(List<Result> results, TimingStore timings) {
+        // Remove durations of shards of previous runs, which will most probably not be executed again
+        val projects = results.stream().map(r -> getProjectKey(r.getRun().getProjectDirectory())).collect(Collectors.toSet());
+        timings.removeIf(key -> key.contains("#") && projects.contains(key.substring(0, key.indexOf('#'))));
+        for (Result result : results) {
+            timings.put(getTimingKey(result.getRun()), result.getDuration());
+        }
+        try {
+            timings.save();
+        }
+        catch (IOException ex) {
+            log.warn("Cannot write test timings to '" + timings.getFile() + "': " + ex.getMessage());
+        }
+    }
+
+    private long getDefaultDuration(File projectDirectory, List<String> tests, TimingStore timings) {
+        return (long)tests.stream()
+            .map(test -> timings.get(getTimingKey(projectDirectory, test)))
+            .filter(duration -> duration != null)
+            .mapToLong(Long::longValue)
+            .average()
+            .orElse(1000);
+    }
+
+    /**
+     * Returns the key of a project in the stored fingerprints and durations. Projects are identified by their path
+     * relative to the build directory, since different projects may well share the same directory name.
+     */
+    private String getProjectKey(File projectDirectory) {
+        val path = buildDirectory.getAbsoluteFile().toPath().relativize(projectDirectory.getAbsoluteFile().toPath());
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    private String getTimingKey(File projectDirectory, String test) {
+        return getProjectKey(projectDirectory) + "/" + test;
+    }
+
+    /**
+     * Returns the key of the duration of a run, which is the project for unsharded runs, the test for shards
+     * containing a single test and the project together with all tests for all other shards
+     */
+    private String getTimingKey(TestRun run) {
+        val projectDirectory = run.getProjectDirectory();
+        if (!run.isSelective())
+            return getProjectKey(projectDirectory);
+        else if (run.getTests().size() == 1)
+            return getTimingKey(projectDirectory, run.getTests().get(0));
+        else
+            return getProjectKey(projectDirectory) + "#" + String.join("+", run.getTests());
+    }
+
+    /**
+     * Writes a JUnit XML report for each project, merging the results of all its runs. Since Flowman only reports
+     * the result of a whole run, each run is reported as a single test case named after the run.
+     */
+    private void writeReports(List<Result> results) {
+        val reportDirectory = new File(buildDirectory, "flowman-reports");
+        val projects = results.stream().collect(Collectors.groupingBy(r -> r.getRun().getProjectDirectory(), LinkedHashMap::new, Collectors.toList()));
+        for (Map.Entry<File, List<Result>> project : projects.entrySet()) {
+            val projectName = project.getKey().getName();
+            val testCases = new ArrayList<JUnitReport.TestCase>();
+            for (Result result : project.getValue()) {
+                val run = result.getRun();
+                val failure = result.getExitCode() != 0 ? "Flowman run '" + run.getName() + "' failed with exit code " + result.getExitCode() : null;
+                val output = run.isSelective() ? "Tests: " + String.join(", ", run.getTests()) : null;
+                testCases.add(new JUnitReport.TestCase(run.getName(), result.getDuration(), failure, output));
+            }
+            val file = new File(reportDirectory, "TEST-" + projectName + ".xml");
+            try {
+                JUnitReport.write(file, projectName, testCases);
+            }
+            catch (IOException ex) {
+                log.warn("Cannot write test report '" + file + "': " + ex.getMessage());
+            }
+        }
+    }
+
+    private void reportResults(List<Result> results, List<File> cachedProjects, Map<TestRun, Long> estimates) throws MojoFailureException {
+        val failures = results.stream().filter(r -> r.getExitCode() != 0).collect(Collectors.toList());
+        if (results.size() + cachedProjects.size() > 1) {
+            log.info("Test results of Flowman projects:");
+            for (File projectDirectory : cachedProjects)
+                log.info("  " + projectDirectory.getName() + ": CACHED (unchanged since last successful run)");
+            for (Result result : results) {
+                val estimate = estimates.get(result.getRun());
+                val duration = String.format("%.1f s", result.getDuration() / 1000.0)
+                    + (estimate != null ? String.format(", previously %.1f s", estimate / 1000.0) : "");
+                if (result.getExitCode() == 0)
+                    log.info("  " + result.getRun().getName() + ": SUCCESS (" + duration + ")");
+                else
+                    log.error("  " + result.getRun().getName() + ": FAILED with exit code " + result.getExitCode() + " (" + duration + ")");
+            }
+        }
+        if (!failures.isEmpty()) {
+            val names = failures.stream().map(r -> r.getRun().getName()).collect(Collectors.joining(", "));
+            throw new MojoFailureException("Tests failed for " + failures.size() + " of " + results.size() + " Flowman test runs: " + names);
+        }
+    }
+
+    private static DaemonClient createDaemonClient(FlowmanMojo mojo) {
+        return mojo.isDaemon() ? new DaemonClient(mojo.getLog(), new File(mojo.getCacheDirectory(), "daemon"), mojo.getDaemonIdleTimeout()) : null;
+    }
+
+    /**
+     * Checks if tests can be executed within the Maven JVM. Since this temporarily modifies the environment variables
+     * and the security manager of the whole JVM, no other Flowman processes may be started at the same time.
+     */
+    private boolean isInProcessSupported(int forks) {
+        if (threadCount > 1 || forks > 1) {
+            log.warn("In-process execution does not support multiple threads or forks, falling back to separate JVMs");
+            return false;
+        }
+        if (daemon != null) {
+            log.warn("In-process execution cannot be combined with the Flowman daemon, falling back to the daemon");
+            return false;
+        }
+        if (!executionSettings.getJavaOptions().isEmpty()) {
+            log.warn("In-process execution does not support Java options, falling back to separate JVMs");
+            return false;
+        }
+        if (!InProcessRunner.isSupported()) {
+            log.warn("In-process execution is not supported by this JVM, falling back to separate JVMs. Please add "
+                + "'--add-opens=java.base/java.util=ALL-UNNAMED' (and '-Djava.security.manager=allow' for Java 18+) to MAVEN_OPTS.");
+            return false;
+        }
+        return true;
+    }
+
+    private Result runTestInProcess(String classPath, TestRun run) throws MojoExecutionException {
+        val start = System.currentTimeMillis();
+        val exitCode = InProcessRunner.run(log, mavenSession.getRepositorySession(), classPath, getEnvironment(), DRIVER_CLASS, getFlowmanArgs(run.getProjectDirectory(), getTestArgs(run)));
+        return new Result(run, exitCode, System.currentTimeMillis() - start);
+    }
+
+    private static String[] getTestArgs(TestRun run) {
+        val args = new ArrayList<String>(Arrays.asList("test", "run"));
+        if (run.isSelective())
+            args.addAll(run.getTests());
+        return args.toArray(new String[0]);
+    }
+
+    /**
+     * Runs the tests of a single Flowman project, either in a new JVM or in a daemon. The output is either
+     * inherited or logged with the given prefix.
+     */
+    private Result runTest(String classPath, TestRun run, String prefix) throws MojoExecutionException {
+        val start = System.currentTimeMillis();
+        val projectDirectory = run.getProjectDirectory();
+        if (daemon != null) {
+            val logOutput = prefix != null ? new LogOutputStream(log, prefix) : null;
+            val exitCode = daemon.run(getJavaCommand(), classPath, getEnvironment(), mavenProject.getBasedir(), DRIVER_CLASS, getFlowmanArgs(projectDirectory, getTestArgs(run)), logOutput != null ? logOutput : System.out);
+            if (logOutput != null)
+                logOutput.close();
+            return new Result(run, exitCode, System.currentTimeMillis() - start);
+        }
+        else {
+            val jvmClassPath = launcher.prepare(getJavaCommand(), classPath);
+            try {
+                val process = createProcess(jvmClassPath, DRIVER_CLASS, projectDirectory, getTestArgs(run));
+                val exitCode = prefix != null
+                    ? execute(process.redirectErrorStream(true), projectDirectory, prefix)
+                    : execute(process.inheritIO(), projectDirectory, null);
+                return new Result(run, exitCode, System.currentTimeMillis() - start);
+            }
+            finally {
+                launcher.finish(jvmClassPath);
+            }
+        }
+    }
+
+    private int execute(ProcessBuilder builder, File projectDirectory, String prefix) throws MojoExecutionException {
+        Process process = null;
+        try {
+            process = builder.start();
+            if (prefix != null) {
+                try (val reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null)
+                        log.info(prefix + line);
+                }
+            }
+            return process.waitFor();
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error running Flowman for project '" + projectDirectory + "'", ex);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running Flowman for project '" + projectDirectory + "'", ex);
+        }
+        finally {
+            if (process != null && process.isAlive())
+                process.destroyForcibly();
+        }
+    }
+
+    private String getClassPath() throws MojoExecutionException {
         val depres = resolveDependencies();
         val classPath = new StringBuffer();
         depres.getResolvedDependencies().stream().forEach(dep -> {
@@ -89,18 +602,35 @@ public class RunArtifacts extends Task {
                 classPath.append(File.pathSeparator);
             classPath.append(dep.getArtifact().getFile());
         });
+        return classPath.toString();
+    }
 
-        // Collect arguments
+    private ProcessBuilder createProcess(JvmLauncher.ClassPath classPath, String mainClass, File projectDirectory, String... args) {
+        val allArgs = new LinkedList<String>(getJavaCommand());
+        allArgs.addAll(classPath.getOptions());
+        allArgs.add(mainClass);
+        allArgs.addAll(getFlowmanArgs(projectDirectory, args));
+        log.debug("Running " + String.join(" ", allArgs));
+
+        val builder = new ProcessBuilder(allArgs);
+        builder.environment().putAll(getEnvironment());
+        if (mavenProject.getBasedir() != null)
+            builder.directory(mavenProject.getBasedir());
+        return builder;
+    }
+
+    private List<String> getJavaCommand() {
         val allArgs = new LinkedList<String>();
-        val args0 = Arrays.asList(
-                "-classpath",
-                classPath.toString(),
-                mainClass,
-                "-f", projectDirectory.toString()
-            );
+        allArgs.add("java");
         allArgs.addAll(Arrays.stream(extraJavaArgs).collect(Collectors.toList()));
         allArgs.addAll(executionSettings.getJavaOptions());
-        allArgs.addAll(args0);
+        return allArgs;
+    }
+
+    private List<String> getFlowmanArgs(File projectDirectory, String... args) {
+        val allArgs = new LinkedList<String>();
+        allArgs.add("-f");
+        allArgs.add(projectDirectory.toString());
         allArgs.addAll(executionSettings.getFlowmanOptions());
         executionSettings.getProfiles().forEach(p -> {
             allArgs.add("-P");
@@ -115,36 +645,14 @@ public class RunArtifacts extends Task {
             allArgs.add(c);
         });
         allArgs.addAll(Arrays.asList(args));
+        return allArgs;
+    }
 
+    private Map<String,String> getEnvironment() {
         val systemEnvironment = new HashMap<String,String>();
         systemEnvironment.put("FLOWMAN_HOME", homeDirectory != null ? homeDirectory.toString() : "");
         systemEnvironment.put("FLOWMAN_CONF_DIR", confDirectory != null ? confDirectory.toString() : "");
         systemEnvironment.putAll(Collections.splitSettings(executionSettings.getSystemEnvironment()));
-
-        executeMojo(
-            plugin(
-                groupId("org.codehaus.mojo"),
-                artifactId("exec-maven-plugin"),
-                version("3.1.0")
-            ),
-            goal("exec"),
-            configuration(
-                element(name("addOutputToClasspath"), "false"),
-                element(name("classpathScope"), "compile"),
-                element(name("inheritIo"), "true"),
-                element(name("environmentVariables"),
-                    systemEnvironment.entrySet().stream().map(arg -> element(name(arg.getKey()), arg.getValue())).toArray(Element[]::new)
-                ),
-                element(name("executable"), "java"),
-                element(name("arguments"),
-                    allArgs.stream().map(arg -> element(name("argument"), arg)).toArray(Element[]::new)
-                )
-            ),
-            executionEnvironment(
-                mavenProject,
-                mavenSession,
-                pluginManager
-            )
-        );
+        return systemEnvironment;
     }
 }
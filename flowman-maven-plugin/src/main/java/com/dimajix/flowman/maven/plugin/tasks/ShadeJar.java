@@ -16,27 +16,66 @@
 
 package com.dimajix.flowman.maven.plugin.tasks;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import lombok.val;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
-
-import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.SelectorUtils;
 
 import com.dimajix.flowman.maven.plugin.model.BuildSettings;
-import com.dimajix.flowman.maven.plugin.model.Package;
 import com.dimajix.flowman.maven.plugin.mojos.FlowmanMojo;
+import com.dimajix.flowman.maven.plugin.tasks.shade.JarShader;
+import com.dimajix.flowman.maven.plugin.util.Checksums;
 
 
+/**
+ * Creates an uber jar containing the project jar and all its runtime dependencies. The jar replaces the original
+ * project jar, which is kept as "original-&lt;name&gt;.jar", same as the maven-shade-plugin does. All dependencies are
+ * merged into a layer first, which is cached and reused as long as the dependencies do not change.
+ */
 public class ShadeJar extends Task {
+    private static final List<String> FILTERS = Arrays.asList(
+        "META-INF/versions/**",
+        "META-INF/MANIFEST.MF",
+        "META-INF/DEPENDENCIES",
+        "META-INF/*.SF",
+        "META-INF/*.DAS",
+        "META-INF/*.RSA"
+    );
+
+    private static final String LAYER_JAR = "dependencies.jar";
+    private static final String LAYER_INDEX = "dependencies.index";
+    private static final Map<String,Object> locks = new ConcurrentHashMap<>();
+
+    private final Log log;
     private final BuildSettings buildSettings;
+    private final File cacheDirectory;
+    private final File checksumsFile;
 
     public ShadeJar(FlowmanMojo mojo, MavenProject mavenProject, BuildSettings buildSettings) throws MojoFailureException {
         super(mojo, mavenProject);
+        this.log = mojo.getLog();
         this.buildSettings = buildSettings;
+        this.cacheDirectory = new File(mojo.getCacheDirectory(), "shade");
+        this.checksumsFile = mojo.getChecksumsFile();
         mavenProject.getModel().setPackaging("jar");
     }
 
@@ -53,57 +92,123 @@ public class ShadeJar extends Task {
         val exclusions = new LinkedList<>(buildSettings.getExclusions());
         exclusions.add("com.dimajix.flowman:flowman-spark-dependencies:*");
 
-        executeMojo(
-            plugin(
-                groupId("org.apache.maven.plugins"),
-                artifactId("maven-shade-plugin"),
-                version("3.4.0")
-            ),
-            goal("shade"),
-            configuration(
-                element(name("shadedClassifierName"), classifier),
-                element(name("outputDirectory"), buildDirectory.toString()),
-                element(name("createDependencyReducedPom"), "false"),
-                element(name("keepDependenciesWithProvidedScope"), "false"),
-                element(name("transformers"),
-                    element(name("transformer"), attribute("implementation", "org.apache.maven.plugins.shade.resource.ApacheLicenseResourceTransformer")),
-                    element(name("transformer"), attribute("implementation", "org.apache.maven.plugins.shade.resource.ApacheNoticeResourceTransformer")),
-                    element(name("transformer"), attribute("implementation", "org.apache.maven.plugins.shade.resource.ServicesResourceTransformer")),
-                    element(name("transformer"), attribute("implementation", "org.apache.maven.plugins.shade.resource.ManifestResourceTransformer"),
-                        element(name("manifestEntries"),
-                            element(name("Main-Class"), mainClass)
-                        )
-                    )
-                ),
-                element(name("artifactSet"),
-                    element(name("includes"),
-                        element(name("include"), "*:*")
-                    ),
-                    element(name("excludes"),
-                        exclusions.stream()
-                            .map(ex -> element(name("exclude"), ex))
-                            .toArray(Element[]::new)
-                    )
-                ),
-                element(name("filters"),
-                    element(name("filter"),
-                        element(name("artifact"), "*:*"),
-                        element(name("excludes"),
-                            element(name("exclude"), "META-INF/versions/**"),
-                            element(name("exclude"), "META-INF/MANIFEST.MF"),
-                            element(name("exclude"), "META-INF/DEPENDENCIES"),
-                            element(name("exclude"), "META-INF/*.SF"),
-                            element(name("exclude"), "META-INF/*.DAS"),
-                            element(name("exclude"), "META-INF/*.RSA")
-                        )
-                    )
-                )
-            ),
-            executionEnvironment(
-                mavenProject,
-                mavenSession,
-                pluginManager
-            )
-        );
+        val projectArtifact = mavenProject.getArtifact();
+        val projectJars = new LinkedList<File>();
+        if (isSelected(projectArtifact, exclusions)) {
+            if (projectArtifact.getFile() == null || !projectArtifact.getFile().isFile())
+                throw new MojoExecutionException("Failed to create shaded artifact, project main artifact does not exist.");
+            projectJars.add(projectArtifact.getFile());
+        }
+        val dependencies = new LinkedHashMap<File, Artifact>();
+        for (Artifact artifact : mavenProject.getArtifacts()) {
+            if (!isSelected(artifact, exclusions)) {
+                log.info("Excluding " + artifact.getId() + " from the shaded jar.");
+            }
+            else if (!"pom".equals(artifact.getType())) {
+                log.info("Including " + artifact.getId() + " in the shaded jar.");
+                dependencies.putIfAbsent(artifact.getFile(), artifact);
+            }
+        }
+
+        val shadedJar = new File(buildDirectory, projectArtifact.getArtifactId() + "-" + projectArtifact.getVersion() + "-" + classifier + "." + projectArtifact.getArtifactHandler().getExtension());
+        try {
+            val shader = new JarShader(log, FILTERS, mainClass);
+            val layerDirectory = getDependencyLayer(shader, dependencies, exclusions);
+            log.info("Creating shaded jar " + shadedJar);
+            shader.shade(projectJars, new File(layerDirectory, LAYER_JAR), new File(layerDirectory, LAYER_INDEX), shadedJar);
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error creating shaded jar '" + shadedJar + "'", ex);
+        }
+
+        // Replace original artifact with shaded artifact
+        val originalJar = projectArtifact.getFile();
+        if (originalJar != null) {
+            val backupJar = new File(buildDirectory, "original-" + originalJar.getName());
+            log.info("Replacing " + originalJar + " with " + shadedJar);
+            try {
+                if (originalJar.exists())
+                    Files.move(originalJar.toPath(), backupJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(shadedJar.toPath(), originalJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (IOException ex) {
+                throw new MojoExecutionException("Error replacing '" + originalJar + "' with '" + shadedJar + "'", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the cache directory containing the merged layer of all dependencies. The layer will be created if it
+     * is not contained in the cache, yet. Since dependencies change much less frequently than the project itself,
+     * this avoids merging all dependencies over and over again.
+     */
+    private File getDependencyLayer(JarShader shader, Map<File, Artifact> dependencies, List<String> exclusions) throws IOException {
+        val key = getLayerKey(dependencies, exclusions);
+        val directory = new File(cacheDirectory, key);
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            if (directory.isDirectory()) {
+                log.info("Using cached dependency layer '" + directory + "'");
+                return directory;
+            }
+
+            // Create layer in a temporary directory first, such that the cache never contains incomplete entries,
+            // even if multiple builds are running concurrently
+            log.info("Creating dependency layer '" + directory + "'");
+            val tempDirectory = new File(cacheDirectory, key + ".tmp-" + UUID.randomUUID());
+            try {
+                Files.createDirectories(tempDirectory.toPath());
+                shader.createLayer(dependencies.keySet(), new File(tempDirectory, LAYER_JAR), new File(tempDirectory, LAYER_INDEX));
+                Files.move(tempDirectory.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (FileAlreadyExistsException ex) {
+                // Some other process was faster
+            }
+            catch (IOException ex) {
+                if (!directory.isDirectory())
+                    throw ex;
+            }
+            finally {
+                try {
+                    FileUtils.deleteDirectory(tempDirectory);
+                }
+                catch (IOException ex) {
+                    log.warn("Cannot remove temporary directory '" + tempDirectory + "'");
+                }
+            }
+            return directory;
+        }
+    }
+
+    /**
+     * Creates a hash of all dependencies (coordinates and contents), the exclusions and the filters
+     */
+    private String getLayerKey(Map<File, Artifact> dependencies, List<String> exclusions) throws IOException {
+        val digest = Checksums.newDigest();
+        Checksums.update(digest, "layer-v1");
+        Checksums.update(digest, String.join(",", FILTERS));
+        Checksums.update(digest, String.join(",", exclusions));
+        for (Map.Entry<File, Artifact> dependency : dependencies.entrySet()) {
+            Checksums.update(digest, dependency.getValue().getId());
+            Checksums.update(digest, Checksums.cachedSha256(dependency.getKey(), checksumsFile));
+        }
+        return Checksums.toHex(digest.digest()).substring(0, 32);
+    }
+
+    /**
+     * Checks if an artifact is selected by the given exclusion patterns. The patterns have the same format as in the
+     * artifact set of the maven-shade-plugin, i.e. "groupId:artifactId[[:type]:classifier]" with wildcards.
+     */
+    private static boolean isSelected(Artifact artifact, List<String> exclusions) {
+        return exclusions.stream().noneMatch(pattern -> {
+            val tokens = pattern.split(":", -1);
+            val groupId = tokens[0];
+            val artifactId = tokens.length > 1 ? tokens[1] : "*";
+            val type = tokens.length > 3 ? tokens[2] : "*";
+            val classifier = tokens.length > 3 ? tokens[3] : (tokens.length > 2 ? tokens[2] : "*");
+            return SelectorUtils.match(groupId, StringUtils.defaultString(artifact.getGroupId()))
+                && SelectorUtils.match(artifactId, StringUtils.defaultString(artifact.getArtifactId()))
+                && SelectorUtils.match(type, StringUtils.defaultString(artifact.getType()))
+                && SelectorUtils.match(classifier, StringUtils.defaultString(artifact.getClassifier()));
+        });
     }
 }
@@ -1,14 +1,20 @@
 package com.dimajix.flowman.maven.plugin.tasks;
 
 import java.io.File;
+import java.security.MessageDigest;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import lombok.val;
 import org.apache.maven.RepositoryUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -24,9 +30,12 @@ import com.dimajix.flowman.maven.plugin.model.BuildSettings;
 import com.dimajix.flowman.maven.plugin.model.Package;
 import com.dimajix.flowman.maven.plugin.model.FlowmanSettings;
 import com.dimajix.flowman.maven.plugin.mojos.FlowmanMojo;
+import com.dimajix.flowman.maven.plugin.util.Checksums;
 
 
 public abstract class Task {
+    private static final String RESOLUTION_CACHE = Task.class.getName() + ".resolutionCache";
+
     protected MavenProject mavenProject;
     protected MavenSession mavenSession;
     protected BuildPluginManager pluginManager;
@@ -49,17 +58,7 @@ public abstract class Task {
 
     protected DependencyResolutionResult resolveDependencies() throws MojoExecutionException {
         val repositorySystemSession = mavenSession.getRepositorySession();
-        DependencyResolutionResult resolutionResult;
-
-        try
-        {
-            DefaultDependencyResolutionRequest resolution = new DefaultDependencyResolutionRequest( mavenProject, repositorySystemSession );
-            resolutionResult = dependenciesResolver.resolve( resolution );
-        }
-        catch ( DependencyResolutionException e )
-        {
-            throw new MojoExecutionException("Error resolving dependencies", e);
-        }
+        val resolutionResult = resolveDependencies(repositorySystemSession);
 
         Set<Artifact> artifacts = new LinkedHashSet<>();
         if ( resolutionResult.getDependencyGraph() != null )
@@ -83,4 +82,56 @@ public abstract class Task {
 
         return resolutionResult;
     }
+
+    /**
+     * Resolves the dependencies of the Maven project. Results are cached within the repository session, such that
+     * all tasks working on projects with the same dependencies only resolve them once.
+     */
+    private DependencyResolutionResult resolveDependencies(RepositorySystemSession repositorySystemSession) throws MojoExecutionException {
+        val cache = getResolutionCache(repositorySystemSession);
+        val entry = cache.computeIfAbsent(getResolutionKey(), k -> new AtomicReference<>());
+        synchronized (entry) {
+            if (entry.get() == null) {
+                try {
+                    DefaultDependencyResolutionRequest resolution = new DefaultDependencyResolutionRequest(mavenProject, repositorySystemSession);
+                    entry.set(dependenciesResolver.resolve(resolution));
+                }
+                catch (DependencyResolutionException e) {
+                    throw new MojoExecutionException("Error resolving dependencies", e);
+                }
+            }
+            return entry.get();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, AtomicReference<DependencyResolutionResult>> getResolutionCache(RepositorySystemSession repositorySystemSession) {
+        val data = repositorySystemSession.getData();
+        // Only create a new map if there is none yet, the compare-and-set resolves races between threads
+        if (data.get(RESOLUTION_CACHE) == null)
+            data.set(RESOLUTION_CACHE, null, new ConcurrentHashMap<String, AtomicReference<DependencyResolutionResult>>());
+        return (Map<String, AtomicReference<DependencyResolutionResult>>)data.get(RESOLUTION_CACHE);
+    }
+
+    /**
+     * Creates a key from everything which influences the dependency resolution of the Maven project
+     */
+    private String getResolutionKey() {
+        val digest = Checksums.newDigest();
+        Checksums.update(digest, mavenProject.getArtifact().getId());
+        mavenProject.getRemoteProjectRepositories().forEach(repo -> Checksums.update(digest, repo.getId() + "=" + repo.getUrl()));
+        updateDependencies(digest, "dependencies", mavenProject.getDependencies());
+        val depMgmt = mavenProject.getDependencyManagement();
+        if (depMgmt != null)
+            updateDependencies(digest, "dependencyManagement", depMgmt.getDependencies());
+        return Checksums.toHex(digest.digest());
+    }
+
+    private static void updateDependencies(MessageDigest digest, String section, List<Dependency> dependencies) {
+        Checksums.update(digest, section);
+        for (Dependency dep : dependencies) {
+            Checksums.update(digest, dep.getManagementKey() + ":" + dep.getVersion() + ":" + dep.getScope() + ":" + dep.getOptional() + ":" + dep.getSystemPath());
+            dep.getExclusions().forEach(ex -> Checksums.update(digest, "!" + ex.getGroupId() + ":" + ex.getArtifactId()));
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.val;
+
+import com.dimajix.flowman.maven.plugin.util.Checksums;
+
+
+/**
+ * Creates fingerprints of all inputs of a Flowman test run, which are used for skipping tests of unchanged projects.
+ */
+class TestFingerprints {
+    private TestFingerprints() {
+    }
+
+    /**
+     * Returns a fingerprint of a test run
+     * @param settings all command line arguments and environment variables
+     * @param classPath the classpath of Flowman. Jars are identified by their size and modification time.
+     * @param directories directories which are identified by the contents of all files, like the Flowman project
+     * @param installations directories which are identified by the size and modification time of all files, like
+     *                      the Flowman installation
+     */
+    public static String fingerprint(List<String> settings, String classPath, List<File> directories, List<File> installations) throws IOException {
+        val digest = Checksums.newDigest();
+        settings.forEach(s -> Checksums.update(digest, s));
+        for (String entry : classPath.split(File.pathSeparator)) {
+            val file = new File(entry);
+            if (file.isDirectory())
+                updateTree(digest, file, false);
+            else
+                Checksums.update(digest, entry + ":" + file.length() + ":" + file.lastModified());
+        }
+        for (File directory : directories)
+            updateTree(digest, directory, true);
+        for (File directory : installations)
+            updateTree(digest, directory, false);
+        return Checksums.toHex(digest.digest());
+    }
+
+    private static void updateTree(MessageDigest digest, File directory, boolean content) throws IOException {
+        Checksums.update(digest, directory.getAbsolutePath());
+        if (!directory.isDirectory())
+            return;
+
+        val root = directory.toPath();
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path path : files) {
+            val file = path.toFile();
+            Checksums.update(digest, root.relativize(path).toString());
+            if (content)
+                Checksums.update(digest, Checksums.sha256(file));
+            else
+                Checksums.update(digest, file.length() + ":" + file.lastModified());
+        }
+    }
+}
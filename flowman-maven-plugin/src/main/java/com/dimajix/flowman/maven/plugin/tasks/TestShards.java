@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.val;
+import lombok.var;
+
+import static com.dimajix.flowman.maven.plugin.util.Jackson.newYAMLFactory;
+
+
+/**
+ * Discovers the tests of Flowman projects and distributes them to multiple shards, such that all shards require
+ * about the same time according to the durations of previous runs.
+ */
+class TestShards {
+    private TestShards() {
+    }
+
+    /**
+     * Returns the names of all tests of a Flowman project. Like Flowman itself, all YAML files in the modules of the
+     * project are scanned for test definitions. An exception is thrown if any file cannot be read, since the
+     * tests would be incomplete otherwise.
+     */
+    public static List<String> discoverTests(File projectDirectory) throws IOException {
+        val mapper = new ObjectMapper(newYAMLFactory());
+        val projectFile = new File(projectDirectory, "project.yml");
+        val project = projectFile.isFile() ? mapper.readTree(projectFile) : null;
+        val modules = project != null ? project.path("modules") : null;
+        if (modules == null || !modules.isArray())
+            return new ArrayList<>();
+
+        val tests = new LinkedHashSet<String>();
+        for (JsonNode module : modules) {
+            val path = new File(projectDirectory, module.asText()).toPath();
+            // Flowman also ignores modules which do not exist
+            if (!Files.exists(path))
+                continue;
+            try (Stream<Path> files = Files.walk(path)) {
+                val specs = files.filter(Files::isRegularFile)
+                    .filter(p -> p.toString().endsWith(".yml") || p.toString().endsWith(".yaml"))
+                    .sorted()
+                    .collect(Collectors.toList());
+                for (Path spec : specs)
+                    addTests(mapper, spec.toFile(), tests);
+            }
+        }
+        return new ArrayList<>(tests);
+    }
+
+    private static void addTests(ObjectMapper mapper, File file, Set<String> tests) throws IOException {
+        val tree = mapper.readTree(file);
+        if (tree == null || !tree.path("tests").isObject())
+            return;
+        Iterator<String> names = tree.path("tests").fieldNames();
+        while (names.hasNext())
+            tests.add(names.next());
+    }
+
+    /**
+     * Distributes all tests to the given number of shards, always assigning the longest remaining test to the
+     * shard with the lowest total duration. Tests keep their original order within each shard.
+     */
+    public static List<List<String>> partition(List<String> tests, int shardCount, ToLongFunction<String> duration) {
+        val shards = new ArrayList<List<String>>();
+        val totals = new long[shardCount];
+        for (int i = 0; i < shardCount; ++i)
+            shards.add(new ArrayList<>());
+
+        val sorted = new ArrayList<String>(tests);
+        sorted.sort(Comparator.comparingLong(duration).reversed());
+        for (String test : sorted) {
+            var shard = 0;
+            for (int i = 1; i < shardCount; ++i) {
+                if (totals[i] < totals[shard])
+                    shard = i;
+            }
+            shards.get(shard).add(test);
+            totals[shard] += duration.applyAsLong(test);
+        }
+
+        for (List<String> shard : shards)
+            shard.sort(Comparator.comparingInt(tests::indexOf));
+        return shards.stream().filter(s -> !s.isEmpty()).collect(Collectors.toList());
+    }
+}
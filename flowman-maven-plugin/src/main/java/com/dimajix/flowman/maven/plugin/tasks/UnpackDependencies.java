@@ -17,25 +17,158 @@
 package com.dimajix.flowman.maven.plugin.tasks;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
 
 import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
 
-import com.dimajix.flowman.maven.plugin.model.Package;
 import com.dimajix.flowman.maven.plugin.mojos.FlowmanMojo;
+import com.dimajix.flowman.maven.plugin.util.Checksums;
 
 
+/**
+ * Unpacks archives into a target directory. Each archive is only unpacked once into a content addressed cache,
+ * which is shared between all packages. The target directory then only receives hard links to the cached files
+ * (or copies, if hard links are not supported). Therefore files in the target directory must never be modified in
+ * place, but always be replaced by new files.
+ */
 public class UnpackDependencies extends Task {
+    private static final Map<String,Object> locks = new ConcurrentHashMap<>();
+
+    private final Log log;
+    private final FlowmanMojo mojo;
+    private final File cacheDirectory;
+
     public UnpackDependencies(FlowmanMojo mojo, MavenProject mavenProject) throws MojoFailureException {
         super(mojo, mavenProject);
+        this.log = mojo.getLog();
+        this.mojo = mojo;
+        this.cacheDirectory = new File(mojo.getCacheDirectory(), "unpack");
+    }
+
+    public void unpack(Collection<Artifact> artifacts, File outputDirectory) throws MojoFailureException, MojoExecutionException {
+        val resolver = new ResolveArtifact(mojo, mavenProject);
+        for (Artifact artifact : artifacts) {
+            resolver.resolve(artifact);
+            val cachedDirectory = getCachedDirectory(artifact);
+            mirror(cachedDirectory, outputDirectory);
+        }
+    }
+
+    /**
+     * Returns the cache directory containing the unpacked contents of the given artifact. The artifact will be
+     * unpacked if it is not contained in the cache, yet.
+     */
+    private File getCachedDirectory(Artifact artifact) throws MojoExecutionException {
+        val key = getKey(artifact);
+        val directory = new File(cacheDirectory, key);
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            if (directory.isDirectory()) {
+                log.info("Using cached " + artifact.getId() + " from '" + directory + "'");
+                return directory;
+            }
+
+            // Unpack into a temporary directory first, such that the cache never contains incomplete entries, even
+            // if multiple builds are running concurrently
+            log.info("Unpacking " + artifact.getId() + " into cache '" + directory + "'");
+            val tempDirectory = new File(cacheDirectory, key + ".tmp-" + UUID.randomUUID());
+            try {
+                executeUnpack(artifact, tempDirectory);
+                Files.move(tempDirectory.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (FileAlreadyExistsException ex) {
+                // Some other process was faster
+            }
+            catch (IOException ex) {
+                if (!directory.isDirectory())
+                    throw new MojoExecutionException("Error moving '" + tempDirectory + "' to '" + directory + "'", ex);
+            }
+            finally {
+                try {
+                    FileUtils.deleteDirectory(tempDirectory);
+                }
+                catch (IOException ex) {
+                    log.warn("Cannot remove temporary directory '" + tempDirectory + "'");
+                }
+            }
+            return directory;
+        }
     }
 
-    public void unpack(Collection<Artifact> artifacts, File outputDirectory) throws MojoExecutionException {
+    private String getKey(Artifact artifact) throws MojoExecutionException {
+        val file = artifact.getFile();
+        try {
+            val checksum = Checksums.cachedSha256(file, mojo.getChecksumsFile());
+            val classifier = StringUtils.isEmpty(artifact.getClassifier()) ? "" : "-" + artifact.getClassifier();
+            return artifact.getGroupId() + "/" + artifact.getArtifactId() + "-" + artifact.getVersion() + classifier + "-" + checksum.substring(0, 16);
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error reading artifact '" + file + "'", ex);
+        }
+    }
+
+    /**
+     * Recreates the directory structure of the source directory in the target directory, using hard links for all
+     * files.
+     */
+    private void mirror(File sourceDirectory, File targetDirectory) throws MojoExecutionException {
+        val source = sourceDirectory.toPath();
+        val target = targetDirectory.toPath();
+        try {
+            Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                private boolean useLinks = true;
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Files.createDirectories(target.resolve(source.relativize(dir)));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    val dst = target.resolve(source.relativize(file));
+                    // Always replace files, otherwise existing hard links would be modified
+                    Files.deleteIfExists(dst);
+                    if (useLinks) {
+                        try {
+                            Files.createLink(dst, file);
+                            return FileVisitResult.CONTINUE;
+                        }
+                        catch (UnsupportedOperationException|IOException ex) {
+                            log.debug("Cannot create hard link '" + dst + "', falling back to copying files");
+                            useLinks = false;
+                        }
+                    }
+                    Files.copy(file, dst, StandardCopyOption.COPY_ATTRIBUTES);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException ex) {
+            throw new MojoExecutionException("Error copying '" + sourceDirectory + "' to '" + targetDirectory + "'", ex);
+        }
+    }
+
+    void executeUnpack(Artifact artifact, File outputDirectory) throws MojoExecutionException {
         executeMojo(
             plugin(
                 groupId("org.apache.maven.plugins"),
@@ -45,14 +178,17 @@ public class UnpackDependencies extends Task {
             goal("unpack"),
             configuration(
                 element(name("outputDirectory"), outputDirectory.toString()),
-                element(name("artifactItems"), artifacts.stream().map(artifact ->
+                // Freshness is already tracked by the cache, therefore always unpack the artifact
+                element(name("overWriteReleases"), "true"),
+                element(name("overWriteSnapshots"), "true"),
+                element(name("artifactItems"),
                     element(name("artifactItem"),
                         element(name("groupId"), artifact.getGroupId()),
                         element(name("artifactId"), artifact.getArtifactId()),
                         element(name("version"), artifact.getVersion()),
                         element(name("type"), artifact.getType()),
                         element(name("classifier"), artifact.getClassifier())
-                    )).toArray(Element[]::new))
+                    ))
             ),
             executionEnvironment(
                 mavenProject,
@@ -60,6 +196,5 @@ public class UnpackDependencies extends Task {
                 pluginManager
             )
         );
-
     }
 }
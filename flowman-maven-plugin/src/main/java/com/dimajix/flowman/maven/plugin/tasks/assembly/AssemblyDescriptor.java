@@ -40,4 +40,7 @@ public class AssemblyDescriptor {
     @JsonProperty("fileSet")
     @JacksonXmlElementWrapper(localName = "fileSets")
     private List<FileSet> fileSets = Collections.emptyList();
+    @JsonProperty("archiveSet")
+    @JacksonXmlElementWrapper(localName = "archiveSets")
+    private List<ArchiveSet> archiveSets = Collections.emptyList();
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks.shade;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import lombok.Value;
+import lombok.val;
+import lombok.var;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.codehaus.plexus.util.IOUtil;
+
+
+/**
+ * Contains all relevant entries of a single jar file, as read from its central directory. The contents of
+ * resources which need to be transformed are read eagerly, such that they can be merged without opening the jar
+ * again.
+ */
+@Value
+class JarIndex {
+    public static final String MANIFEST_PATH = "META-INF/MANIFEST.MF";
+    public static final String SERVICES_PATH = "META-INF/services";
+    private static final int LAYER_INDEX_VERSION = 1;
+
+    @Value
+    static class Entry {
+        String name;
+        long time;
+        // Only set for resources which will be transformed
+        byte[] content;
+    }
+
+    File jar;
+    List<Entry> entries;
+    // The first manifest in the jar, which is read independently of any filter
+    Entry manifest;
+    boolean moduleInfo;
+
+    public static JarIndex scan(File jar, Predicate<String> isFiltered) throws IOException {
+        val entries = new ArrayList<Entry>();
+        Entry manifest = null;
+        var moduleInfo = false;
+        try (val zip = new ZipFile(jar)) {
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                val name = entry.getName();
+                if (manifest == null && MANIFEST_PATH.equalsIgnoreCase(name))
+                    manifest = new Entry(name, entry.getTime(), read(zip, entry));
+
+                if (entry.isDirectory() || isFiltered.test(name) || name.equals("META-INF/INDEX.LIST"))
+                    continue;
+                if (name.equals("module-info.class")) {
+                    moduleInfo = true;
+                    continue;
+                }
+
+                val content = isTransformed(name) && !isLicense(name) ? read(zip, entry) : null;
+                entries.add(new Entry(name, entry.getTime(), content));
+            }
+        }
+        return new JarIndex(jar, entries, manifest, moduleInfo);
+    }
+
+    /**
+     * Loads the index of a layer, which has been created by {@link JarShader#createLayer}. The index consists of
+     * all entries of the layer jar itself, plus all transformed entries of the original jars, which are stored in
+     * a separate file.
+     */
+    public static JarIndex loadLayer(File layerJar, File indexFile) throws IOException {
+        val jar = scan(layerJar, name -> false);
+        val entries = new ArrayList<Entry>(jar.getEntries());
+        Entry manifest = null;
+        try (val in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (in.readInt() != LAYER_INDEX_VERSION)
+                throw new IOException("Unsupported layer index '" + indexFile + "'");
+            if (in.readBoolean())
+                manifest = readEntry(in);
+            val count = in.readInt();
+            for (int i = 0; i < count; ++i)
+                entries.add(readEntry(in));
+        }
+        return new JarIndex(layerJar, entries, manifest, false);
+    }
+
+    /**
+     * Stores the manifest and the given transformed entries as the index of a layer
+     */
+    public static void saveLayer(File indexFile, Entry manifest, List<Entry> transformedEntries) throws IOException {
+        try (val out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile.toPath())))) {
+            out.writeInt(LAYER_INDEX_VERSION);
+            out.writeBoolean(manifest != null);
+            if (manifest != null)
+                writeEntry(out, manifest);
+            out.writeInt(transformedEntries.size());
+            for (Entry entry : transformedEntries)
+                writeEntry(out, entry);
+        }
+    }
+
+    public static boolean isLicense(String name) {
+        return "META-INF/LICENSE".equalsIgnoreCase(name)
+            || name.regionMatches(true, 0, "META-INF/LICENSE.txt", 0, "META-INF/LICENSE.txt".length())
+            || name.regionMatches(true, 0, "META-INF/LICENSE.md", 0, "META-INF/LICENSE.md".length());
+    }
+
+    public static boolean isService(String name) {
+        return name.startsWith(SERVICES_PATH);
+    }
+
+    public static boolean isTransformed(String name) {
+        return !name.endsWith(".class") && (isLicense(name) || NoticeTransformer.canTransform(name) || isService(name));
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        val name = in.readUTF();
+        val time = in.readLong();
+        val length = in.readInt();
+        byte[] content = null;
+        if (length >= 0) {
+            content = new byte[length];
+            in.readFully(content);
+        }
+        return new Entry(name, time, content);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeUTF(entry.getName());
+        out.writeLong(entry.getTime());
+        if (entry.getContent() != null) {
+            out.writeInt(entry.getContent().length);
+            out.write(entry.getContent());
+        }
+        else {
+            out.writeInt(-1);
+        }
+    }
+
+    private static byte[] read(ZipFile zip, ZipArchiveEntry entry) throws IOException {
+        try (val in = zip.getInputStream(entry)) {
+            return IOUtil.toByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks.shade;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import lombok.val;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.SelectorUtils;
+
+
+/**
+ * Merges multiple jar files into a single uber jar. This mimics the behaviour of the maven-shade-plugin without
+ * any relocations and with the Apache license, Apache notice, services and manifest transformers. Since no classes
+ * need to be rewritten, all regular entries are copied in their compressed form from the source jars, which avoids
+ * decompressing and recompressing the whole content. Duplicate entries are resolved by "first one wins".
+ *
+ * Shading is performed in three phases: First the central directories of all jars are scanned in parallel. Then
+ * a {@link ShadePlan} is created from these indices, which contains the final list of entries and the merged
+ * resources. Finally, the writer copies all entries of the plan into the output jar.
+ *
+ * Jars can also be merged into a reusable layer first, which is then merged with further jars later. This is used
+ * for caching the (rarely changing) dependencies of a project.
+ */
+public class JarShader {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Log log;
+    private final List<String> excludes;
+    private final String mainClass;
+
+    /**
+     * @param log the logger to use
+     * @param excludes path patterns of entries to be excluded from all jars
+     * @param mainClass the main class to be put into the manifest
+     */
+    public JarShader(Log log, Collection<String> excludes, String mainClass) {
+        this.log = log;
+        this.excludes = excludes.stream()
+            .map(p -> p.endsWith("/") ? p + "**" : p)
+            .collect(Collectors.toList());
+        this.mainClass = mainClass;
+    }
+
+    public void shade(Collection<File> jars, File outputJar) throws IOException {
+        val indices = scan(jars);
+        val plan = ShadePlan.create(indices, mainClass, log);
+        plan.reportConflicts(log);
+        write(plan, outputJar, false);
+    }
+
+    /**
+     * Creates an uber jar from the given jars followed by a layer, which has been created before by
+     * {@link #createLayer}. The result is the same as if the original jars of the layer were used instead.
+     */
+    public void shade(Collection<File> jars, File layerJar, File layerIndex, File outputJar) throws IOException {
+        val indices = new ArrayList<>(scan(jars));
+        indices.add(JarIndex.loadLayer(layerJar, layerIndex));
+        val plan = ShadePlan.create(indices, mainClass, log);
+        plan.reportConflicts(log);
+        write(plan, outputJar, false);
+    }
+
+    /**
+     * Creates a layer from the given jars, which can later be merged with other jars. The layer jar contains all
+     * regular entries, while the index file contains all transformed resources (manifest, NOTICE, services,
+     * licenses) in their original form, such that they can be merged again later.
+     */
+    public void createLayer(Collection<File> jars, File layerJar, File layerIndex) throws IOException {
+        val indices = scan(jars);
+        val plan = ShadePlan.create(indices, null, log);
+        plan.reportConflicts(log);
+        write(plan, layerJar, true);
+        JarIndex.saveLayer(layerIndex, plan.getSourceManifest(), plan.getTransformedEntries());
+    }
+
+    /**
+     * Reads the central directories of all jars in parallel using a fork-join pool.
+     */
+    private List<JarIndex> scan(Collection<File> jars) throws IOException {
+        try {
+            return ForkJoinPool.commonPool().submit(() -> jars.parallelStream().map(jar -> {
+                try {
+                    log.debug("Scanning jar " + jar);
+                    return JarIndex.scan(jar, this::isFiltered);
+                }
+                catch (IOException ex) {
+                    throw new UncheckedIOException("Error reading jar '" + jar + "'", ex);
+                }
+            }).collect(Collectors.toList())).get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning jars", ex);
+        }
+        catch (ExecutionException ex) {
+            val cause = ex.getCause();
+            if (cause instanceof UncheckedIOException)
+                throw new IOException(cause.getMessage(), cause.getCause());
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private void write(ShadePlan plan, File outputJar, boolean layer) throws IOException {
+        Files.createDirectories(outputJar.getAbsoluteFile().getParentFile().toPath());
+        try (val channel = FileChannel.open(outputJar.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             val out = new ZipArchiveOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+            // Layers only contain regular entries, all resources are merged into the final jar
+            if (!layer)
+                writeResource(out, plan.getManifest());
+            for (Map.Entry<File, List<ShadePlan.Item>> jar : plan.getItems().entrySet()) {
+                copyItems(out, jar.getKey(), jar.getValue());
+            }
+            if (!layer) {
+                for (ShadePlan.Resource resource : plan.getResources()) {
+                    writeResource(out, resource);
+                }
+            }
+        }
+    }
+
+    private void copyItems(ZipArchiveOutputStream out, File jar, List<ShadePlan.Item> items) throws IOException {
+        if (items.isEmpty())
+            return;
+        log.debug("Copying entries from jar " + jar);
+        try (val zip = new ZipFile(jar)) {
+            for (ShadePlan.Item item : items) {
+                if (item.isDirectory()) {
+                    val entry = new ZipArchiveEntry(item.getName());
+                    entry.setMethod(ZipArchiveEntry.STORED);
+                    entry.setSize(0);
+                    entry.setCrc(0);
+                    if (item.getTime() > 0)
+                        entry.setTime(item.getTime());
+                    out.putArchiveEntry(entry);
+                    out.closeArchiveEntry();
+                }
+                else {
+                    copyEntry(out, zip, zip.getEntry(item.getName()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies an entry in its compressed form
+     */
+    private static void copyEntry(ZipArchiveOutputStream out, ZipFile zip, ZipArchiveEntry entry) throws IOException {
+        val copy = new ZipArchiveEntry(entry.getName());
+        copy.setMethod(entry.getMethod());
+        copy.setCrc(entry.getCrc());
+        copy.setSize(entry.getSize());
+        copy.setCompressedSize(entry.getCompressedSize());
+        copy.setTime(entry.getTime());
+        try (InputStream in = zip.getRawInputStream(entry)) {
+            out.addRawArchiveEntry(copy, in);
+        }
+    }
+
+    private static void writeResource(ZipArchiveOutputStream out, ShadePlan.Resource resource) throws IOException {
+        val entry = new ZipArchiveEntry(resource.getName());
+        entry.setMethod(ZipArchiveEntry.DEFLATED);
+        if (resource.getTime() > 0)
+            entry.setTime(resource.getTime());
+        out.putArchiveEntry(entry);
+        out.write(resource.getContent());
+        out.closeArchiveEntry();
+    }
+
+    private boolean isFiltered(String name) {
+        return excludes.stream().anyMatch(p -> SelectorUtils.matchPath(p, name, "/", true));
+    }
+}
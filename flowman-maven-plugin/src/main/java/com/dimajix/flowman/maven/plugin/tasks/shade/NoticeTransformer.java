@@ -0,0 +1,151 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks.shade;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import lombok.val;
+import lombok.var;
+
+
+/**
+ * Merges all NOTICE files into a single file. This produces the same output as the ApacheNoticeResourceTransformer
+ * of the maven-shade-plugin with its default settings.
+ */
+class NoticeTransformer {
+    private static final String PROJECT_NAME = "";
+    private static final String PREAMBLE1 = "// ------------------------------------------------------------------\n"
+        + "// NOTICE file corresponding to the section 4d of The Apache License,\n"
+        + "// Version 2.0, in this case for ";
+    private static final String PREAMBLE2 = "\n// ------------------------------------------------------------------\n";
+    private static final String PREAMBLE3 = "This product includes software developed at\n";
+    private static final String ORGANIZATION_NAME = "The Apache Software Foundation";
+    private static final String ORGANIZATION_URL = "http://www.apache.org/";
+    private static final String INCEPTION_YEAR = "2006";
+
+    private final Set<String> entries = new LinkedHashSet<>();
+    private final Map<String, Set<String>> organizationEntries = new LinkedHashMap<>();
+    private final Charset charset = Charset.defaultCharset();
+    private String copyright;
+    private long time = Long.MIN_VALUE;
+
+    public static boolean canTransform(String name) {
+        return "META-INF/NOTICE".equalsIgnoreCase(name)
+            || "META-INF/NOTICE.txt".equalsIgnoreCase(name)
+            || "META-INF/NOTICE.md".equalsIgnoreCase(name);
+    }
+
+    public void process(InputStream is, long time) throws IOException {
+        if (entries.isEmpty()) {
+            var year = new SimpleDateFormat("yyyy").format(new Date());
+            if (!INCEPTION_YEAR.equals(year))
+                year = INCEPTION_YEAR + "-" + year;
+            entries.add(PREAMBLE1 + PROJECT_NAME + PREAMBLE2);
+            // Placeholder for the copyright, which may be replaced later
+            entries.add(PROJECT_NAME + "\nCopyright " + year + " " + ORGANIZATION_NAME + "\n");
+            entries.add(PREAMBLE3 + ORGANIZATION_NAME + " (" + ORGANIZATION_URL + ").\n");
+        }
+
+        val reader = new BufferedReader(new InputStreamReader(is, charset));
+        var sb = new StringBuilder();
+        Set<String> currentOrg = null;
+        int lineCount = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            val trimmedLine = line.trim();
+            if (trimmedLine.startsWith("//"))
+                continue;
+
+            if (trimmedLine.length() > 0) {
+                if (trimmedLine.startsWith("- ")) {
+                    // resource-bundle 1.3 mode
+                    if (lineCount == 1 && sb.toString().contains("This product includes/uses software(s) developed by")) {
+                        currentOrg = organizationEntries.computeIfAbsent(sb.toString().trim(), k -> new TreeSet<>());
+                        sb = new StringBuilder();
+                    }
+                    else if (sb.length() > 0 && currentOrg != null) {
+                        currentOrg.add(sb.toString());
+                        sb = new StringBuilder();
+                    }
+                }
+                sb.append(line).append("\n");
+                lineCount++;
+            }
+            else {
+                val entry = sb.toString();
+                if (entry.startsWith(PROJECT_NAME) && entry.contains("Copyright "))
+                    copyright = entry;
+                if (currentOrg == null)
+                    entries.add(entry);
+                else
+                    currentOrg.add(entry);
+                sb = new StringBuilder();
+                lineCount = 0;
+                currentOrg = null;
+            }
+        }
+        if (sb.length() > 0) {
+            if (currentOrg == null)
+                entries.add(sb.toString());
+            else
+                currentOrg.add(sb.toString());
+        }
+
+        if (time > this.time)
+            this.time = time;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public byte[] getContent() {
+        val writer = new StringBuilder();
+        int count = 0;
+        for (String entry : entries) {
+            ++count;
+            if (entry.equals(copyright) && count != 2)
+                continue;
+
+            if (count == 2 && copyright != null)
+                writer.append(copyright).append('\n');
+            else
+                writer.append(entry).append('\n');
+
+            if (count == 3) {
+                for (Map.Entry<String, Set<String>> org : organizationEntries.entrySet()) {
+                    writer.append(org.getKey()).append('\n');
+                    for (String l : org.getValue())
+                        writer.append(l);
+                    writer.append('\n');
+                }
+            }
+        }
+        return writer.toString().getBytes(charset);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks.shade;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+import lombok.Value;
+import lombok.val;
+import org.apache.maven.plugin.logging.Log;
+
+import static com.dimajix.flowman.maven.plugin.tasks.shade.JarIndex.MANIFEST_PATH;
+import static com.dimajix.flowman.maven.plugin.tasks.shade.JarIndex.SERVICES_PATH;
+
+
+/**
+ * Describes the complete content of an uber jar, as derived from the indices of all source jars. For every entry
+ * the first jar containing it wins. All transformed resources (manifest, NOTICE and services) are already merged
+ * into their final content, such that the writer only needs to copy entries.
+ */
+class ShadePlan {
+    private static final int MAX_REPORTED_CONFLICTS = 10;
+
+    @Value
+    static class Item {
+        String name;
+        long time;
+        boolean directory;
+    }
+
+    @Value
+    static class Resource {
+        String name;
+        long time;
+        byte[] content;
+    }
+
+    // Items to be copied (or directories to be created) per source jar, in the order of the jars
+    @Getter private final Map<File, List<Item>> items = new LinkedHashMap<>();
+    // Resources to be written after all items
+    @Getter private final List<Resource> resources = new ArrayList<>();
+    @Getter private Resource manifest;
+    // Entries which are present in multiple jars, together with all jars containing them
+    @Getter private final Map<String, List<File>> conflicts = new LinkedHashMap<>();
+    // The first manifest and all transformed entries of the source jars, as required for building layers
+    @Getter private JarIndex.Entry sourceManifest;
+    @Getter private final List<JarIndex.Entry> transformedEntries = new ArrayList<>();
+
+    private final Map<String, File> owners = new HashMap<>();
+    private final Set<String> entries = new HashSet<>();
+    private final Set<String> resourceNames = new HashSet<>();
+    private final NoticeTransformer notice = new NoticeTransformer();
+    private final Map<String, List<String>> services = new LinkedHashMap<>();
+    private long servicesTime = Long.MIN_VALUE;
+
+    public static ShadePlan create(List<JarIndex> jars, String mainClass, Log log) throws IOException {
+        val plan = new ShadePlan();
+        plan.addManifest(jars, mainClass);
+        for (JarIndex jar : jars) {
+            if (jar.isModuleInfo())
+                log.warn("Discovered module-info.class in " + jar.getJar().getName() + ". Shading will break its strong encapsulation.");
+            plan.addJar(jar);
+        }
+        plan.addTransformedResources();
+        return plan;
+    }
+
+    /**
+     * Logs all entries which are contained in multiple jars, grouped by the set of jars.
+     */
+    public void reportConflicts(Log log) {
+        if (conflicts.isEmpty())
+            return;
+
+        val groups = new LinkedHashMap<List<File>, Set<String>>();
+        conflicts.forEach((name, jars) -> groups.computeIfAbsent(jars, k -> new TreeSet<>()).add(name));
+        log.warn(conflicts.size() + " classes or resources are present in multiple jars. Only the first occurrence of each is included in the fat jar.");
+        for (Map.Entry<List<File>, Set<String>> group : groups.entrySet()) {
+            val jars = group.getKey().stream().map(File::getName).collect(Collectors.joining(", "));
+            val names = group.getValue();
+            val classes = names.stream().filter(n -> n.endsWith(".class")).count();
+            log.warn(jars + " define " + classes + " overlapping classes and " + (names.size() - classes) + " overlapping resources:");
+            names.stream().limit(MAX_REPORTED_CONFLICTS).forEach(n -> log.warn("  - " + n));
+            if (names.size() > MAX_REPORTED_CONFLICTS)
+                log.warn("  - " + (names.size() - MAX_REPORTED_CONFLICTS) + " more...");
+        }
+    }
+
+    /**
+     * Uses the first manifest of all jars and adds the main class
+     */
+    private void addManifest(List<JarIndex> jars, String mainClass) throws IOException {
+        val first = jars.stream().map(JarIndex::getManifest).filter(m -> m != null).findFirst();
+        sourceManifest = first.orElse(null);
+        val manifest = first.isPresent() ? new Manifest(new ByteArrayInputStream(first.get().getContent())) : new Manifest();
+        if (mainClass != null)
+            manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+        val content = new ByteArrayOutputStream();
+        manifest.write(content);
+        this.manifest = new Resource(MANIFEST_PATH, first.map(JarIndex.Entry::getTime).orElse(Long.MIN_VALUE), content.toByteArray());
+        entries.add(MANIFEST_PATH);
+        resourceNames.add(MANIFEST_PATH);
+    }
+
+    private void addJar(JarIndex jar) throws IOException {
+        val file = jar.getJar();
+        val jarItems = new ArrayList<Item>();
+        items.put(file, jarItems);
+        for (JarIndex.Entry entry : jar.getEntries()) {
+            val name = entry.getName();
+            // All manifests have already been consumed by addManifest
+            if (MANIFEST_PATH.equalsIgnoreCase(name))
+                resourceNames.add(name);
+
+            val idx = name.lastIndexOf('/');
+            if (idx != -1) {
+                val dir = name.substring(0, idx);
+                if (!resourceNames.contains(dir))
+                    addDirectory(dir, entry.getTime(), jarItems);
+            }
+
+            if (name.endsWith(".class")) {
+                if (entries.add(name))
+                    addItem(file, entry, jarItems);
+                else
+                    addConflict(name, file);
+            }
+            else if (!transformResource(entry)) {
+                if (resourceNames.add(name) && entries.add(name))
+                    addItem(file, entry, jarItems);
+                else
+                    addConflict(name, file);
+            }
+        }
+    }
+
+    private boolean transformResource(JarIndex.Entry entry) throws IOException {
+        val name = entry.getName();
+        if (JarIndex.isTransformed(name))
+            transformedEntries.add(entry);
+
+        if (JarIndex.isLicense(name)) {
+            return true;
+        }
+        else if (NoticeTransformer.canTransform(name)) {
+            notice.process(new ByteArrayInputStream(entry.getContent()), entry.getTime());
+            return true;
+        }
+        else if (JarIndex.isService(name)) {
+            val lines = services.computeIfAbsent(SERVICES_PATH + "/" + name.substring(SERVICES_PATH.length() + 1), k -> new ArrayList<>());
+            try (val scanner = new Scanner(new ByteArrayInputStream(entry.getContent()), StandardCharsets.UTF_8.name())) {
+                while (scanner.hasNextLine())
+                    lines.add(scanner.nextLine());
+            }
+            if (entry.getTime() > servicesTime)
+                servicesTime = entry.getTime();
+            return true;
+        }
+        return false;
+    }
+
+    private void addTransformedResources() {
+        resources.add(new Resource("META-INF/NOTICE", notice.getTime(), notice.getContent()));
+        for (Map.Entry<String, List<String>> service : services.entrySet()) {
+            val content = new StringBuilder();
+            for (String line : service.getValue())
+                content.append(line).append('\n');
+            resources.add(new Resource(service.getKey(), servicesTime, content.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    private void addDirectory(String name, long time, List<Item> jarItems) {
+        val idx = name.lastIndexOf('/');
+        if (idx > 0) {
+            val parent = name.substring(0, idx);
+            if (!resourceNames.contains(parent))
+                addDirectory(parent, time, jarItems);
+        }
+        jarItems.add(new Item(name + "/", time, true));
+        entries.add(name + "/");
+        resourceNames.add(name);
+    }
+
+    private void addItem(File jar, JarIndex.Entry entry, List<Item> jarItems) {
+        jarItems.add(new Item(entry.getName(), entry.getTime(), false));
+        owners.put(entry.getName(), jar);
+    }
+
+    private void addConflict(String name, File jar) {
+        val owner = owners.get(name);
+        // Duplicates of directories or of the manifest are no real conflicts
+        if (owner == null || owner.equals(jar))
+            return;
+        val jars = conflicts.computeIfAbsent(name, k -> new ArrayList<>(Collections.singletonList(owner)));
+        if (!jars.contains(jar))
+            jars.add(jar);
+    }
+}
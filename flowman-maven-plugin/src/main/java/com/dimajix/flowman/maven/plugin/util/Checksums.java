@@ -0,0 +1,120 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.val;
+import lombok.var;
+
+
+public class Checksums {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final Map<File,FingerprintStore> checksumStores = new HashMap<>();
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", ex);
+        }
+    }
+
+    public static String sha256(File file) throws IOException {
+        val digest = newDigest();
+        update(digest, file);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the SHA-256 checksum of a file, which is reused as long as the size and the modification time of the
+     * file do not change. Checksums are persisted in the given store file, such that they are also reused by
+     * subsequent builds. This is meant for large files which rarely change, like artifacts in the local Maven
+     * repository.
+     */
+    public static String cachedSha256(File file, File storeFile) throws IOException {
+        val key = file.getAbsolutePath();
+        val stamp = file.length() + ":" + file.lastModified() + ":";
+        val store = getChecksumStore(storeFile);
+        synchronized (store) {
+            val entry = store.get(key);
+            if (entry != null && entry.startsWith(stamp))
+                return entry.substring(stamp.length());
+        }
+
+        val checksum = sha256(file);
+        synchronized (store) {
+            store.put(key, stamp + checksum);
+            store.save();
+        }
+        return checksum;
+    }
+
+    private static synchronized FingerprintStore getChecksumStore(File file) throws IOException {
+        val key = file.getAbsoluteFile();
+        var store = checksumStores.get(key);
+        if (store == null) {
+            store = FingerprintStore.load(key);
+            checksumStores.put(key, store);
+        }
+        return store;
+    }
+
+    public static String sha256(String text) {
+        val digest = newDigest();
+        update(digest, text);
+        return toHex(digest.digest());
+    }
+
+    public static void update(MessageDigest digest, File file) throws IOException {
+        val buffer = new byte[64*1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+    }
+
+    public static void update(MessageDigest digest, String text) {
+        val bytes = text.getBytes(StandardCharsets.UTF_8);
+        // Also add the length, such that consecutive strings cannot be confused
+        digest.update((byte)(bytes.length >>> 24));
+        digest.update((byte)(bytes.length >>> 16));
+        digest.update((byte)(bytes.length >>> 8));
+        digest.update((byte)bytes.length);
+        digest.update(bytes);
+    }
+
+    public static String toHex(byte[] bytes) {
+        val result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            result[2*i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2*i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+}
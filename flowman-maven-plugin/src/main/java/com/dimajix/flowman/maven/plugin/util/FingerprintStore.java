@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import lombok.val;
+
+
+/**
+ * Simple persistent key/value store for fingerprints (i.e. content hashes) of files, which is used for implementing
+ * incremental builds.
+ */
+public class FingerprintStore {
+    private final File file;
+    private final Map<String,String> entries = new TreeMap<>();
+
+    private FingerprintStore(File file) {
+        this.file = file;
+    }
+
+    public static FingerprintStore load(File file) throws IOException {
+        val store = new FingerprintStore(file);
+        if (file.isFile()) {
+            val props = new Properties();
+            try (val in = new FileInputStream(file)) {
+                props.load(in);
+            }
+            props.stringPropertyNames().forEach(key -> store.entries.put(key, props.getProperty(key)));
+        }
+        return store;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String get(String key) {
+        return entries.get(key);
+    }
+
+    public void put(String key, String fingerprint) {
+        entries.put(key, fingerprint);
+    }
+
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    public Set<String> keys() {
+        return entries.keySet();
+    }
+
+    public void save() throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        val props = new Properties();
+        props.putAll(entries);
+        try (val out = new FileOutputStream(file)) {
+            props.store(out, null);
+        }
+    }
+}
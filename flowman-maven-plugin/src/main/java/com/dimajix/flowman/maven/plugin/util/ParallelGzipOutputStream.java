@@ -0,0 +1,200 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import lombok.val;
+
+
+/**
+ * A gzip output stream which compresses independent blocks of data in parallel, similar to pigz. Each block is
+ * compressed with the last 32 KiB of the previous block as its dictionary and is terminated by a sync flush, such
+ * that all blocks can simply be concatenated into a single deflate stream. The result is a regular gzip file, which
+ * can be read by any gzip implementation.
+ */
+public class ParallelGzipOutputStream extends FilterOutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private final int blockSize;
+    private final int level;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private byte[] block;
+    private int blockLength = 0;
+    private byte[] previousBlock = null;
+    private long totalLength = 0;
+    private boolean closed = false;
+
+    public ParallelGzipOutputStream(OutputStream out) throws IOException {
+        this(out, DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors(), Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int blockSize, int threads, int level) throws IOException {
+        super(out);
+        this.blockSize = Math.max(blockSize, DICTIONARY_SIZE);
+        this.level = level;
+        this.maxPending = 2 * Math.max(1, threads);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            val thread = new Thread(runnable, "gzip-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.block = new byte[this.blockSize];
+        writeHeader();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte)b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+        crc.update(b, off, len);
+        totalLength += len;
+        while (len > 0) {
+            val count = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+            if (blockLength == blockSize)
+                submitBlock(false);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Blocks are only written once they are complete, otherwise compression would suffer
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            submitBlock(true);
+            while (!pending.isEmpty())
+                writeNextBlock();
+            writeTrailer();
+            out.flush();
+        }
+        finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        val data = blockLength == block.length ? block : Arrays.copyOf(block, blockLength);
+        val dictionary = previousBlock;
+        pending.add(executor.submit(() -> compress(data, dictionary, last)));
+        previousBlock = data;
+        block = new byte[blockSize];
+        blockLength = 0;
+
+        // Limit the number of blocks in flight, which also limits memory usage
+        while (pending.size() > maxPending)
+            writeNextBlock();
+    }
+
+    private void writeNextBlock() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing data");
+        }
+        catch (ExecutionException ex) {
+            throw new IOException("Error compressing data", ex.getCause());
+        }
+    }
+
+    private byte[] compress(byte[] data, byte[] dictionary, boolean last) {
+        val deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null)
+                deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            deflater.setInput(data);
+            val result = new ByteArrayOutputStream(data.length / 2 + 64);
+            val buffer = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    val count = deflater.deflate(buffer);
+                    result.write(buffer, 0, count);
+                }
+            }
+            else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    result.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            return result.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        out.write(new byte[] {
+            0x1f, (byte)0x8b,   // Magic number
+            Deflater.DEFLATED,  // Compression method
+            0,                  // Flags
+            0, 0, 0, 0,         // Modification time
+            0,                  // Extra flags
+            (byte)0xff          // Unknown operating system
+        });
+    }
+
+    private void writeTrailer() throws IOException {
+        writeInt((int)crc.getValue());
+        writeInt((int)totalLength);
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import lombok.val;
+
+
+/**
+ * Simple persistent store for durations (in milliseconds) of previous executions, which is used for scheduling
+ * long-running executions first.
+ */
+public class TimingStore {
+    private final File file;
+    private final Map<String,Long> entries = new TreeMap<>();
+
+    private TimingStore(File file) {
+        this.file = file;
+    }
+
+    public static TimingStore empty(File file) {
+        return new TimingStore(file);
+    }
+
+    public static TimingStore load(File file) throws IOException {
+        val store = new TimingStore(file);
+        if (file.isFile()) {
+            val props = new Properties();
+            try (val in = new FileInputStream(file)) {
+                props.load(in);
+            }
+            for (String key : props.stringPropertyNames()) {
+                try {
+                    store.entries.put(key, Long.parseLong(props.getProperty(key)));
+                }
+                catch (NumberFormatException ex) {
+                    // Ignore invalid entries
+                }
+            }
+        }
+        return store;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Long get(String key) {
+        return entries.get(key);
+    }
+
+    public void put(String key, long duration) {
+        entries.put(key, duration);
+    }
+
+    public void removeIf(Predicate<String> predicate) {
+        entries.keySet().removeIf(predicate);
+    }
+
+    /**
+     * Saves all durations sorted by key and without a timestamp, such that the file can be tracked for regressions
+     */
+    public void save() throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        val lines = new ArrayList<String>();
+        for (Map.Entry<String,Long> entry : entries.entrySet()) {
+            // Let Properties do the escaping of keys and drop its timestamp comment
+            val props = new Properties();
+            props.setProperty(entry.getKey(), Long.toString(entry.getValue()));
+            val writer = new StringWriter();
+            props.store(writer, null);
+            Arrays.stream(writer.toString().split("\\R")).filter(l -> !l.startsWith("#")).forEach(lines::add);
+        }
+        try (val out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.ISO_8859_1)) {
+            out.write("# Durations of Flowman test runs in milliseconds\n");
+            for (String line : lines)
+                out.write(line + "\n");
+        }
+    }
+}
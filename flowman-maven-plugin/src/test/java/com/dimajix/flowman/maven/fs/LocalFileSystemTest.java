@@ -0,0 +1,182 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.stream.Collectors;
+
+import lombok.val;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+
+public class LocalFileSystemTest {
+    @Test
+    public void testSync() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-fs").toFile();
+        try {
+            val source = new File(tempDir, "source");
+            val target = new File(tempDir, "target");
+            new File(source, "flows/sub").mkdirs();
+            Files.write(new File(source, "project.yml").toPath(), "name: test".getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(source, "flows/a.yml").toPath(), "a: 1".getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(source, "flows/sub/b.yml").toPath(), "b: 1".getBytes(StandardCharsets.UTF_8));
+
+            val fs = new LocalFileSystem();
+            fs.sync(target.toURI(), source, true);
+            assertThat(new File(target, "flows/sub/b.yml")).hasContent("b: 1");
+
+            // Unchanged files are not copied again
+            val unchanged = new File(target, "project.yml");
+            unchanged.setLastModified(1000000000000L);
+            Files.write(new File(source, "flows/a.yml").toPath(), "a: 2".getBytes(StandardCharsets.UTF_8));
+            new File(target, "old/sub").mkdirs();
+            Files.write(new File(target, "old/sub/c.yml").toPath(), "c: 1".getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(target, "flows/c.yml").toPath(), "c: 1".getBytes(StandardCharsets.UTF_8));
+
+            fs.sync(target.toURI(), source, false);
+            assertThat(unchanged.lastModified()).isEqualTo(1000000000000L);
+            assertThat(new File(target, "flows/a.yml")).hasContent("a: 2");
+            assertThat(new File(target, "flows/c.yml")).exists();
+
+            fs.sync(target.toURI(), source, true);
+            assertThat(new File(target, "flows/c.yml")).doesNotExist();
+            assertThat(new File(target, "old")).doesNotExist();
+            assertThat(new File(target, "flows/sub/b.yml")).exists();
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testCopyRetainsPermissions() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-fs").toFile();
+        try {
+            assumeTrue(Files.getFileStore(tempDir.toPath()).supportsFileAttributeView(PosixFileAttributeView.class));
+            val source = new File(tempDir, "source");
+            new File(source, "bin").mkdirs();
+            val script = new File(source, "bin/run.sh").toPath();
+            Files.write(script, "#!/bin/sh".getBytes(StandardCharsets.UTF_8));
+            Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+            val fs = new LocalFileSystem();
+            fs.put(new File(tempDir, "run.sh").toURI(), script.toFile());
+            fs.putAll(new File(tempDir, "copy").toURI(), source);
+            fs.sync(new File(tempDir, "sync").toURI(), source, false);
+
+            for (String path : new String[]{"run.sh", "copy/bin/run.sh", "sync/bin/run.sh"}) {
+                assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(tempDir, path).toPath())))
+                    .isEqualTo("rwxr-xr-x");
+            }
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testPutAllWithHardLinks() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-fs").toFile();
+        try {
+            val source = new File(tempDir, "source");
+            new File(source, "flows").mkdirs();
+            Files.write(new File(source, "project.yml").toPath(), "name: test".getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(source, "flows/a.yml").toPath(), "a: 1".getBytes(StandardCharsets.UTF_8));
+
+            val linked = new File(tempDir, "linked");
+            new LocalFileSystem(true).putAll(linked.toURI(), source);
+            assertThat(Files.isSameFile(new File(linked, "flows/a.yml").toPath(), new File(source, "flows/a.yml").toPath())).isTrue();
+
+            // Falls back to copying if links cannot be created, for example across different file systems
+            val copied = new File(tempDir, "copied");
+            val fs = new LocalFileSystem(true) {
+                @Override
+                void createLink(Path link, Path existing) throws IOException {
+                    throw new IOException("Invalid cross-device link");
+                }
+            };
+            fs.putAll(copied.toURI(), source);
+            assertThat(new File(copied, "flows/a.yml")).hasContent("a: 1");
+            assertThat(Files.isSameFile(new File(copied, "flows/a.yml").toPath(), new File(source, "flows/a.yml").toPath())).isFalse();
+
+            // Without hard links, files are always copied
+            val plain = new File(tempDir, "plain");
+            new LocalFileSystem(false).putAll(plain.toURI(), source);
+            assertThat(new File(plain, "project.yml")).hasContent("name: test");
+            assertThat(Files.isSameFile(new File(plain, "project.yml").toPath(), new File(source, "project.yml").toPath())).isFalse();
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testListAndLink() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-fs").toFile();
+        try {
+            new File(tempDir, "releases/r1").mkdirs();
+            new File(tempDir, "releases/r2").mkdirs();
+            Files.write(new File(tempDir, "releases/r2/project.yml").toPath(), "name: test".getBytes(StandardCharsets.UTF_8));
+
+            val fs = new LocalFileSystem();
+            val releases = fs.list(new File(tempDir, "releases").toURI());
+            assertThat(releases.stream().map(FileStatus::getName).collect(Collectors.toList())).containsExactly("r1", "r2");
+            assertThat(releases.stream().allMatch(FileStatus::isDirectory)).isTrue();
+
+            val current = new File(tempDir, "current");
+            fs.link(current.toURI(), "releases/r1");
+            assertThat(Files.readSymbolicLink(current.toPath()).toString()).isEqualTo("releases/r1");
+            fs.link(current.toURI(), "releases/r2");
+            assertThat(new File(current, "project.yml")).hasContent("name: test");
+            assertThat(tempDir.list()).containsExactlyInAnyOrder("current", "releases");
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testStatAndChecksum() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-fs").toFile();
+        try {
+            val file = new File(tempDir, "flow.jar");
+            Files.write(file.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+
+            val fs = new LocalFileSystem();
+            assertThat(fs.stat(new File(tempDir, "missing.jar").toURI())).isNull();
+            assertThat(fs.stat(file.toURI()).getSize()).isEqualTo(7);
+            assertThat(fs.stat(file.toURI()).isDirectory()).isFalse();
+            assertThat(fs.checksum(file.toURI())).isNull();
+
+            Files.write(new File(tempDir, "flow.jar.sha256").toPath(), "abc123  flow.jar\n".getBytes(StandardCharsets.UTF_8));
+            assertThat(fs.checksum(file.toURI())).isEqualTo("abc123");
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
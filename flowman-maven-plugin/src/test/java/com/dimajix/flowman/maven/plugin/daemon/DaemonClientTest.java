@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.daemon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import lombok.val;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class DaemonClientTest {
+    public static class Main {
+        private static int runs = 0;
+
+        public static void main(String[] args) {
+            ++runs;
+            System.out.println("pid=" + ManagementFactory.getRuntimeMXBean().getName() + " runs=" + runs);
+            System.err.println("env=" + System.getenv("DAEMON_TEST"));
+            if (args[0].equals("fail"))
+                throw new IllegalStateException("Main failed");
+            System.exit(Integer.parseInt(args[0]));
+        }
+    }
+
+    @Test
+    public void testDaemonIsReused() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-daemon").toFile();
+        try {
+            val errors = new ArrayList<String>();
+            val log = new SystemStreamLog() {
+                @Override
+                public void error(CharSequence content) {
+                    errors.add(content.toString());
+                }
+            };
+            val client = new DaemonClient(log, tempDir, 1);
+            val java = Collections.singletonList(new File(System.getProperty("java.home"), "bin/java").getPath());
+            val classPath = new File(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+            val env = Collections.singletonMap("DAEMON_TEST", "value");
+
+            val output1 = new ByteArrayOutputStream();
+            val exitCode1 = client.run(java, classPath, env, null, Main.class.getName(), Arrays.asList("0"), output1);
+            val output2 = new ByteArrayOutputStream();
+            val exitCode2 = client.run(java, classPath, env, null, Main.class.getName(), Arrays.asList("3"), output2);
+
+            assertThat(exitCode1).isEqualTo(0);
+            assertThat(exitCode2).isEqualTo(3);
+            val lines1 = new String(output1.toByteArray(), StandardCharsets.UTF_8).split("\\R");
+            val lines2 = new String(output2.toByteArray(), StandardCharsets.UTF_8).split("\\R");
+            assertThat(lines1[0]).endsWith(" runs=1");
+            assertThat(lines2[0]).isEqualTo(lines1[0].replace(" runs=1", " runs=2"));
+            assertThat(lines2[1]).isEqualTo("env=value");
+
+            // Uncaught exceptions are reported via the log of the client
+            val exitCode3 = client.run(java, classPath, env, null, Main.class.getName(), Arrays.asList("fail"), new ByteArrayOutputStream());
+            assertThat(exitCode3).isEqualTo(1);
+            assertThat(errors).hasSize(1);
+            assertThat(errors.get(0)).contains("java.lang.IllegalStateException: Main failed").contains(Main.class.getName() + ".main");
+        }
+        finally {
+            // Removing the state file also terminates the daemon
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
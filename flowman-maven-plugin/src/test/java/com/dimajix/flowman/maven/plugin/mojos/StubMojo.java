@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.mojos;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import lombok.val;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectDependenciesResolver;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+
+
+/**
+ * Minimal Flowman mojo for testing tasks without a Maven container. The Maven session only contains a plain
+ * repository session and a single project, whose build directory is the given directory.
+ */
+public class StubMojo extends FlowmanMojo {
+    public StubMojo(File buildDirectory) {
+        this.buildDirectory = buildDirectory;
+        this.threads = "1";
+        this.forkCount = "1";
+        this.deployThreads = "1";
+        this.testShards = "1";
+
+        val artifact = new DefaultArtifact("com.example", "project", "1.0", null, "jar", null, new DefaultArtifactHandler("jar"));
+        val build = new Build();
+        build.setDirectory(buildDirectory.toString());
+        build.setOutputDirectory(new File(buildDirectory, "resources").toString());
+        this.mavenProject = new MavenProject();
+        this.mavenProject.setArtifact(artifact);
+        this.mavenProject.setBuild(build);
+        this.mavenProject.setRemoteArtifactRepositories(new ArrayList<>());
+
+        val request = new DefaultMavenExecutionRequest();
+        request.setLocalRepositoryPath(new File(buildDirectory, "repository"));
+        this.mavenSession = new MavenSession(null, new DefaultRepositorySystemSession(), request, new DefaultMavenExecutionResult());
+        this.mavenSession.setCurrentProject(mavenProject);
+    }
+
+    public StubMojo withDependenciesResolver(ProjectDependenciesResolver resolver) {
+        this.dependenciesResolver = resolver;
+        return this;
+    }
+
+    public StubMojo withIncrementalTests(boolean incrementalTests) {
+        this.incrementalTests = incrementalTests;
+        return this;
+    }
+
+    @Override
+    public void execute() {
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import lombok.val;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.dimajix.flowman.maven.plugin.mojos.StubMojo;
+import com.dimajix.flowman.maven.plugin.tasks.assembly.ArchiveSet;
+import com.dimajix.flowman.maven.plugin.tasks.assembly.AssemblyDescriptor;
+import com.dimajix.flowman.maven.plugin.tasks.assembly.FileSet;
+
+
+public class AssembleDistTest {
+    /**
+     * Creates a tar.gz archive with the given entries. Names ending with "/" are directories, values starting with
+     * "->" are symbolic links, all other values are the contents of files.
+     */
+    private static void writeArchive(File archive, Map<String,String> entries) throws IOException {
+        try (val out = new TarArchiveOutputStream(new GZIPOutputStream(Files.newOutputStream(archive.toPath())), "UTF-8")) {
+            out.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (Map.Entry<String,String> e : entries.entrySet()) {
+                val name = e.getKey();
+                if (name.endsWith("/")) {
+                    out.putArchiveEntry(new TarArchiveEntry(name));
+                }
+                else if (e.getValue().startsWith("->")) {
+                    val entry = new TarArchiveEntry(name, TarConstants.LF_SYMLINK);
+                    entry.setLinkName(e.getValue().substring(2));
+                    out.putArchiveEntry(entry);
+                }
+                else {
+                    val data = e.getValue().getBytes(StandardCharsets.UTF_8);
+                    val entry = new TarArchiveEntry(name);
+                    entry.setMode(0100600);
+                    entry.setSize(data.length);
+                    out.putArchiveEntry(entry);
+                    out.write(data);
+                }
+                out.closeArchiveEntry();
+            }
+        }
+    }
+
+    /**
+     * Reads all entries of a tar.gz archive, together with the contents of all files
+     */
+    private static Map<String,TarArchiveEntry> readArchive(File archive, Map<String,String> contents) throws IOException {
+        val entries = new LinkedHashMap<String,TarArchiveEntry>();
+        try (val in = new TarArchiveInputStream(new GZIPInputStream(Files.newInputStream(archive.toPath())), "UTF-8")) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextTarEntry()) != null) {
+                assertThat(entries).doesNotContainKey(entry.getName());
+                entries.put(entry.getName(), entry);
+                if (entry.isFile())
+                    contents.put(entry.getName(), new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+
+    private static AssemblyDescriptor createDescriptor(String baseDirectory) {
+        val descriptor = new AssemblyDescriptor();
+        descriptor.setFormats(Collections.singletonList("tar.gz"));
+        descriptor.setBaseDirectory(baseDirectory);
+        return descriptor;
+    }
+
+    @Test
+    public void testCopyArchive() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-assemble").toFile();
+        try {
+            val source = new File(tempDir, "flowman-dist.tar.gz");
+            val sourceEntries = new LinkedHashMap<String,String>();
+            sourceEntries.put("./flowman-1.0/", "");
+            sourceEntries.put("./flowman-1.0/bin/", "");
+            sourceEntries.put("./flowman-1.0/bin/flowman", "#!/bin/sh");
+            sourceEntries.put("./flowman-1.0/conf/default-namespace.yml", "name: default");
+            sourceEntries.put("./flowman-1.0/lib/flowman.jar", "jar");
+            sourceEntries.put("./flowman-1.0/lib/current.jar", "->flowman.jar");
+            sourceEntries.put("./flowman-1.0/lib/.DS_Store", "junk");
+            sourceEntries.put("./flowman-1.0/lib/.git/config", "junk");
+            sourceEntries.put("./flowman-1.0/plugins/flowman-aws/aws.jar", "aws");
+            sourceEntries.put("./flowman-1.0/plugins/flowman-azure/azure.jar", "azure");
+            sourceEntries.put("./other/file.txt", "other");
+            writeArchive(source, sourceEntries);
+
+            // Same archive sets as used by DistPackage when repacking
+            val archive = source.toString();
+            val descriptor = createDescriptor("package-1.0");
+            descriptor.setArchiveSets(Arrays.asList(
+                new ArchiveSet(archive, "flowman-1.0/", "", "0644", "0755", Arrays.asList("**/*"), Arrays.asList("bin/*", "conf/*", "plugins/**")),
+                new ArchiveSet(archive, "flowman-1.0/", "", "0755", "0755", Arrays.asList("bin/*"), Collections.emptyList()),
+                new ArchiveSet(archive, "flowman-1.0/", "", "0644", "0755", Arrays.asList("plugins/flowman-aws/**"), Collections.emptyList())
+            ));
+
+            val mojo = new StubMojo(tempDir);
+            new AssembleDist(mojo, mojo.getMavenProject()).assemble(descriptor, "package-1.0");
+
+            val result = new File(tempDir, "package-1.0.tar.gz");
+            assertThat(mojo.getMavenProject().getArtifact().getFile()).isEqualTo(result);
+            val contents = new LinkedHashMap<String,String>();
+            val entries = readArchive(result, contents);
+            assertThat(entries.keySet()).containsExactlyInAnyOrder(
+                "package-1.0/",
+                "package-1.0/bin/",
+                "package-1.0/bin/flowman",
+                "package-1.0/lib/",
+                "package-1.0/lib/flowman.jar",
+                "package-1.0/lib/current.jar",
+                "package-1.0/plugins/",
+                "package-1.0/plugins/flowman-aws/",
+                "package-1.0/plugins/flowman-aws/aws.jar"
+            );
+            assertThat(entries.get("package-1.0/bin/").getMode()).isEqualTo(040755);
+            assertThat(entries.get("package-1.0/bin/flowman").getMode()).isEqualTo(0100755);
+            assertThat(entries.get("package-1.0/lib/flowman.jar").getMode()).isEqualTo(0100644);
+            assertThat(entries.get("package-1.0/plugins/flowman-aws/aws.jar").getMode()).isEqualTo(0100644);
+            assertThat(entries.get("package-1.0/lib/current.jar").isSymbolicLink()).isTrue();
+            assertThat(entries.get("package-1.0/lib/current.jar").getLinkName()).isEqualTo("flowman.jar");
+            assertThat(contents.get("package-1.0/bin/flowman")).isEqualTo("#!/bin/sh");
+            assertThat(contents.get("package-1.0/plugins/flowman-aws/aws.jar")).isEqualTo("aws");
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testAssembleFileSets() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-assemble").toFile();
+        try {
+            val home = new File(tempDir, "flowman-1.0");
+            val longName = "lib/" + StringUtils.repeat("very-long-directory-name/", 5) + StringUtils.repeat('x', 120) + ".jar";
+            writeFile(new File(home, "bin/flowman"), "#!/bin/sh");
+            writeFile(new File(home, "lib/flowman.jar"), "jar");
+            writeFile(new File(home, longName), "long");
+            writeFile(new File(home, "lib/.DS_Store"), "junk");
+            writeFile(new File(tempDir, "conf/default-namespace.yml"), "first");
+            writeFile(new File(tempDir, "override/default-namespace.yml"), "second");
+            writeFile(new File(tempDir, "override/other.yml"), "other");
+
+            // Same file sets as used by DistPackage
+            val descriptor = createDescriptor("package-1.0");
+            descriptor.setFileSets(Arrays.asList(
+                new FileSet(home.toString(), "", "0644", "0755", Arrays.asList("**/*"), Arrays.asList("bin/*")),
+                new FileSet(home.toString(), "", "0755", "0755", Arrays.asList("bin/*"), Collections.emptyList()),
+                new FileSet(new File(tempDir, "conf").toString(), "conf", "0644", "0755", Collections.emptyList(), Collections.emptyList()),
+                new FileSet(new File(tempDir, "override").toString(), "conf", "0600", "0700", Collections.emptyList(), Collections.emptyList()),
+                new FileSet(new File(tempDir, "missing").toString(), "missing", "0644", "0755", Collections.emptyList(), Collections.emptyList())
+            ));
+
+            val mojo = new StubMojo(tempDir);
+            new AssembleDist(mojo, mojo.getMavenProject()).assemble(descriptor, "package-1.0");
+
+            val contents = new LinkedHashMap<String,String>();
+            val entries = readArchive(new File(tempDir, "package-1.0.tar.gz"), contents);
+            assertThat(contents.keySet()).containsExactlyInAnyOrder(
+                "package-1.0/bin/flowman",
+                "package-1.0/lib/flowman.jar",
+                "package-1.0/" + longName,
+                "package-1.0/conf/default-namespace.yml",
+                "package-1.0/conf/other.yml"
+            );
+            assertThat(entries).containsKeys("package-1.0/", "package-1.0/bin/", "package-1.0/lib/", "package-1.0/conf/");
+            assertThat(entries.get("package-1.0/bin/flowman").getMode()).isEqualTo(0100755);
+            assertThat(entries.get("package-1.0/lib/flowman.jar").getMode()).isEqualTo(0100644);
+            assertThat(entries.get("package-1.0/lib/").getMode()).isEqualTo(040755);
+            assertThat(contents.get("package-1.0/" + longName)).isEqualTo("long");
+
+            // The first file set containing a file wins
+            assertThat(contents.get("package-1.0/conf/default-namespace.yml")).isEqualTo("first");
+            assertThat(entries.get("package-1.0/conf/default-namespace.yml").getMode()).isEqualTo(0100644);
+            assertThat(entries.get("package-1.0/conf/other.yml").getMode()).isEqualTo(0100600);
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
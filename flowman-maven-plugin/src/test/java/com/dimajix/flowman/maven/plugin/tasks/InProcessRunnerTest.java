@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import lombok.val;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+
+public class InProcessRunnerTest {
+    /**
+     * Writes the value of an environment variable into a file and then exits with the given exit code
+     */
+    public static class Main {
+        public static void main(String[] args) throws IOException {
+            if (args[0].equals("fail"))
+                throw new IllegalStateException("Main failed");
+            Files.write(Paths.get(args[1]), (System.getenv("FLOWMAN_IN_PROCESS") + "," + System.getenv(args[2])).getBytes(StandardCharsets.UTF_8));
+            System.exit(Integer.parseInt(args[0]));
+        }
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        assumeTrue(InProcessRunner.isSupported(), "In-process execution requires --add-opens=java.base/java.util=ALL-UNNAMED");
+
+        val tempDir = Files.createTempDirectory("flowman-inprocess").toFile();
+        val session = new DefaultRepositorySystemSession();
+        try {
+            val errors = new ArrayList<String>();
+            val log = new SystemStreamLog() {
+                @Override
+                public void error(CharSequence content, Throwable error) {
+                    errors.add(content + ": " + error.getMessage());
+                }
+            };
+            val classPath = new File(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+            val previousEnvironment = new HashMap<String,String>(System.getenv());
+            // Also override an existing variable, which needs to be restored afterwards
+            val existing = previousEnvironment.keySet().iterator().next();
+            val environment = new HashMap<String,String>();
+            environment.put("FLOWMAN_IN_PROCESS", "value");
+            environment.put(existing, "overridden");
+
+            val output = new File(tempDir, "env.txt");
+            val exitCode = InProcessRunner.run(log, session, classPath, environment, Main.class.getName(), Arrays.asList("3", output.getPath(), existing));
+            assertThat(exitCode).isEqualTo(3);
+            assertThat(output).hasContent("value,overridden");
+            assertThat(System.getenv("FLOWMAN_IN_PROCESS")).isNull();
+            assertThat(System.getenv()).isEqualTo(previousEnvironment);
+            assertThat(System.getSecurityManager()).isNull();
+            assertThat(errors).isEmpty();
+
+            // Exceptions are reported via the log and result in exit code 1
+            val failedExitCode = InProcessRunner.run(log, session, classPath, environment, Main.class.getName(), Arrays.asList("fail"));
+            assertThat(failedExitCode).isEqualTo(1);
+            assertThat(errors).containsExactly("Uncaught exception in '" + Main.class.getName() + "': Main failed");
+            assertThat(System.getenv()).isEqualTo(previousEnvironment);
+        }
+        finally {
+            InProcessRunner.close(session);
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
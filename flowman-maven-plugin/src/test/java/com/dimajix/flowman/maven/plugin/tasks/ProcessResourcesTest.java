@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import lombok.val;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.dimajix.flowman.maven.plugin.mojos.StubMojo;
+
+
+public class ProcessResourcesTest {
+    private static void writeFile(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testIncrementalProcessing() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-resources").toFile();
+        try {
+            val sources = new File(tempDir, "src/flow");
+            writeFile(new File(sources, "project.yml"), "name: @project.name@");
+            writeFile(new File(sources, "mapping/static.yml"), "kind: static");
+            writeFile(new File(sources, "mapping/obsolete.yml"), "kind: obsolete");
+            val outputDirectory = new File(tempDir, "resources");
+            val target = new File(outputDirectory, "flow");
+
+            val messages = new ArrayList<String>();
+            val mojo = new StubMojo(tempDir);
+            mojo.setLog(new SystemStreamLog() {
+                @Override
+                public void info(CharSequence content) {
+                    messages.add(content.toString());
+                }
+            });
+            val project = mojo.getMavenProject();
+            project.getProperties().setProperty("project.name", "first");
+
+            new ProcessResources(mojo, project).processResources(sources, outputDirectory);
+            assertThat(messages).containsExactly("Processing 3 of 3 resources in '" + sources + "'");
+            assertThat(new File(target, "project.yml")).hasContent("name: first");
+            assertThat(new File(target, "mapping/static.yml")).hasContent("kind: static");
+
+            // Nothing has changed
+            messages.clear();
+            new ProcessResources(mojo, project).processResources(sources, outputDirectory);
+            assertThat(messages).containsExactly("All 3 resources in '" + sources + "' are up to date");
+
+            // Only files referencing a changed property are filtered again
+            messages.clear();
+            project.getProperties().setProperty("project.name", "second");
+            new ProcessResources(mojo, project).processResources(sources, outputDirectory);
+            assertThat(messages).containsExactly("Processing 1 of 3 resources in '" + sources + "'");
+            assertThat(new File(target, "project.yml")).hasContent("name: second");
+
+            // Outputs of deleted sources are removed, together with their empty directories
+            messages.clear();
+            new File(sources, "mapping/obsolete.yml").delete();
+            new File(sources, "mapping/static.yml").delete();
+            new ProcessResources(mojo, project).processResources(sources, outputDirectory);
+            assertThat(messages).containsExactly("All 1 resources in '" + sources + "' are up to date");
+            assertThat(new File(target, "mapping")).doesNotExist();
+            assertThat(new File(target, "project.yml")).hasContent("name: second");
+
+            // Modified outputs are restored
+            messages.clear();
+            writeFile(new File(target, "project.yml"), "name: modified");
+            new ProcessResources(mojo, project).processResources(sources, outputDirectory);
+            assertThat(messages).containsExactly("Processing 1 of 1 resources in '" + sources + "'");
+            assertThat(new File(target, "project.yml")).hasContent("name: second");
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
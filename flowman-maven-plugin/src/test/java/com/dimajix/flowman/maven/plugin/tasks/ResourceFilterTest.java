@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Random;
+
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.shared.filtering.FilteringUtils;
+import org.apache.maven.shared.filtering.MultiDelimiterInterpolatorFilterReaderLineEnding;
+import org.codehaus.plexus.interpolation.PrefixAwareRecursionInterceptor;
+import org.codehaus.plexus.interpolation.fixed.FixedStringSearchInterpolator;
+import org.codehaus.plexus.interpolation.fixed.PropertiesBasedValueSource;
+import org.codehaus.plexus.interpolation.multi.MultiDelimiterStringSearchInterpolator;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class ResourceFilterTest {
+    private static final String[] CASES = {
+        "", "@", "@@", "@@@", "@a@", "x@a@y", "@a@@b@", "@a@b@", "@u@a@", "@u@b@a@", "@@a@", "a@b", "@a", "a@",
+        "@a\n@", "@a\r\n@b@", "@a\r@b@", "\r@a@\r", "x@u@@a@", "@a@\t@b@", "${a}", "${a}@a@",
+        "@rec@", "@empty@", "@win@", "@sp ace@", "@ a@", "@dollar@", "@at@", "@at@a@", "@u@", "@project.x@",
+        "@" + StringUtils.repeat('x', 257) + "@a@", "@" + StringUtils.repeat('x', 258) + "@a@",
+        "@" + StringUtils.repeat('x', 259) + "@a@", "@" + StringUtils.repeat('x', 300) + "@a@",
+        "name: @project.name@\nversion: @a@\r\nvalue: '@b@@'\n"
+    };
+
+    private static Properties properties() {
+        val props = new Properties();
+        props.setProperty("a", "A");
+        props.setProperty("b", "B");
+        props.setProperty("rec", "x@a@y");
+        props.setProperty("empty", "");
+        props.setProperty("win", "C:\\foo\\bar");
+        props.setProperty("sp ace", "SP");
+        props.setProperty(" a", "SPA");
+        props.setProperty("", "EMPTY");
+        props.setProperty("dollar", "${a}");
+        props.setProperty("at", "q@w");
+        props.setProperty(StringUtils.repeat('x', 257), "X257");
+        props.setProperty(StringUtils.repeat('x', 258), "X258");
+        props.setProperty(StringUtils.repeat('x', 259), "X259");
+        return props;
+    }
+
+    private static ResourceFilter createFilter(Properties props) {
+        return new ResourceFilter(FixedStringSearchInterpolator.create(
+            FixedStringSearchInterpolator.create(new PropertiesBasedValueSource(props))
+        ));
+    }
+
+    /**
+     * Filters the text in the same way as the maven-resources-plugin does with the configuration previously used
+     * by ProcessResources.
+     */
+    private static String filterWithMavenFiltering(String text, Properties props) throws IOException {
+        val delimiters = new LinkedHashSet<>(Collections.singletonList("@"));
+        val interpolator = new MultiDelimiterStringSearchInterpolator();
+        interpolator.setDelimiterSpecs(delimiters);
+        interpolator.addValueSource(new org.codehaus.plexus.interpolation.PropertiesBasedValueSource(props));
+        interpolator.addPostProcessor((expression, value) -> value instanceof String ? FilteringUtils.escapeWindowsPath((String)value) : value);
+        val reader = new MultiDelimiterInterpolatorFilterReaderLineEnding(new StringReader(text), interpolator, false);
+        reader.setRecursionInterceptor(new PrefixAwareRecursionInterceptor(Arrays.asList("project.", "pom."), true));
+        reader.setDelimiterSpecs(delimiters);
+        reader.setInterpolateWithPrefixPattern(false);
+        reader.setEscapeString(null);
+
+        val writer = new StringWriter();
+        val buffer = new char[4096];
+        int count;
+        while ((count = reader.read(buffer, 0, buffer.length)) > 0)
+            writer.write(buffer, 0, count);
+        return writer.toString();
+    }
+
+    @Test
+    public void testCompatibility() throws IOException {
+        val props = properties();
+        val filter = createFilter(props);
+        for (String text : CASES) {
+            assertThat(filter.filter(text)).as(text).isEqualTo(filterWithMavenFiltering(text, props));
+        }
+    }
+
+    @Test
+    public void testRandomCompatibility() throws IOException {
+        val props = properties();
+        val filter = createFilter(props);
+        val fragments = new String[] { "@", "@", "@", "a", "b", "u", "rec", "win", " ", "\n", "\r", "\r\n", "x", "${a}", "at" };
+        val random = new Random(42);
+        for (int i = 0; i < 5000; ++i) {
+            val text = new StringBuilder();
+            val count = random.nextInt(20);
+            for (int j = 0; j < count; ++j)
+                text.append(fragments[random.nextInt(fragments.length)]);
+            assertThat(filter.filter(text.toString())).as(text.toString()).isEqualTo(filterWithMavenFiltering(text.toString(), props));
+        }
+    }
+
+    @Test
+    public void testLargeInput() throws IOException {
+        // Make sure that tokens crossing internal buffer boundaries are handled correctly
+        val props = properties();
+        val filter = createFilter(props);
+        val text = new StringBuilder();
+        for (int i = 0; text.length() < 300000; ++i) {
+            text.append(StringUtils.repeat('-', i % 17)).append("@a@ @u@").append(i % 5 == 0 ? "\n" : "");
+        }
+        assertThat(filter.filter(text.toString())).isEqualTo(filterWithMavenFiltering(text.toString(), props));
+    }
+}
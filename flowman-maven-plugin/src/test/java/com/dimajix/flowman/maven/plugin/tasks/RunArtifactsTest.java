@@ -0,0 +1,226 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import lombok.val;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.DependencyResolutionResult;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.dimajix.flowman.maven.plugin.model.ExecutionSettings;
+import com.dimajix.flowman.maven.plugin.mojos.StubMojo;
+import com.dimajix.flowman.maven.plugin.util.FingerprintStore;
+import com.dimajix.flowman.tools.exec.Driver;
+
+
+/**
+ * Runs Flowman projects with the stub {@link Driver}, which uses the file "exit-code" within a project as its exit
+ * code and records all tested projects in the file specified by FLOWMAN_TEST_LOG.
+ */
+public class RunArtifactsTest {
+    private static class TestResolutionResult implements DependencyResolutionResult {
+        private final List<Dependency> dependencies;
+
+        TestResolutionResult(File classes) {
+            this.dependencies = Collections.singletonList(new Dependency(new DefaultArtifact("com.example:driver:1.0").setFile(classes), "runtime"));
+        }
+
+        @Override
+        public DependencyNode getDependencyGraph() {
+            return null;
+        }
+        @Override
+        public List<Dependency> getDependencies() {
+            return dependencies;
+        }
+        @Override
+        public List<Dependency> getResolvedDependencies() {
+            return dependencies;
+        }
+        @Override
+        public List<Dependency> getUnresolvedDependencies() {
+            return Collections.emptyList();
+        }
+        @Override
+        public List<Exception> getCollectionErrors() {
+            return Collections.emptyList();
+        }
+        @Override
+        public List<Exception> getResolutionErrors(Dependency dependency) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static RunArtifacts createRunner(File tempDir, List<String> infos, List<String> errors) throws Exception {
+        return createRunner(tempDir, false, infos, errors);
+    }
+
+    private static RunArtifacts createRunner(File tempDir, boolean incrementalTests, List<String> infos, List<String> errors) throws Exception {
+        val classes = new File(Driver.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        val mojo = new StubMojo(tempDir)
+            .withDependenciesResolver(request -> new TestResolutionResult(classes))
+            .withIncrementalTests(incrementalTests);
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                infos.add(content.toString());
+            }
+            @Override
+            public void error(CharSequence content) {
+                errors.add(content.toString());
+            }
+        });
+        val settings = new ExecutionSettings();
+        settings.setSystemEnvironment(Collections.singletonList("FLOWMAN_TEST_LOG=" + new File(tempDir, "runs.log")));
+        return new RunArtifacts(mojo, mojo.getMavenProject(), settings);
+    }
+
+    private static File createProject(File tempDir, String name, int exitCode) throws IOException {
+        val project = new File(tempDir, "resources/" + name);
+        project.mkdirs();
+        Files.write(new File(project, "project.yml").toPath(), ("name: " + name + "\n").getBytes(StandardCharsets.UTF_8));
+        if (exitCode != 0)
+            Files.write(new File(project, "exit-code").toPath(), String.valueOf(exitCode).getBytes(StandardCharsets.UTF_8));
+        return project;
+    }
+
+    private static List<String> getTestedProjects(File tempDir) throws IOException {
+        val testLog = new File(tempDir, "runs.log");
+        if (!testLog.exists())
+            return Collections.emptyList();
+        return Files.readAllLines(testLog.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testExitCode() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-run").toFile();
+        try {
+            val runner = createRunner(tempDir, new CopyOnWriteArrayList<>(), new CopyOnWriteArrayList<>());
+            val success = createProject(tempDir, "success", 0);
+            val failure = createProject(tempDir, "failure", 3);
+
+            runner.runTests(success);
+            assertThatThrownBy(() -> runner.runTests(failure))
+                .isInstanceOf(MojoFailureException.class)
+                .hasMessageContaining("1 of 1")
+                .hasMessageContaining("failure");
+
+            assertThat(getTestedProjects(tempDir)).containsExactly(success.getPath(), failure.getPath());
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testAllProjectsAreTestedBeforeFailing() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-run").toFile();
+        try {
+            val infos = new CopyOnWriteArrayList<String>();
+            val errors = new CopyOnWriteArrayList<String>();
+            val runner = createRunner(tempDir, infos, errors);
+            val a = createProject(tempDir, "a", 0);
+            val b = createProject(tempDir, "b", 3);
+            val c = createProject(tempDir, "c", 0);
+
+            assertThatThrownBy(() -> runner.runTests(Arrays.asList(a, b, c), 2, 1))
+                .isInstanceOf(MojoFailureException.class)
+                .hasMessage("Tests failed for 1 of 3 Flowman test runs: b");
+
+            assertThat(getTestedProjects(tempDir)).containsExactlyInAnyOrder(a.getPath(), b.getPath(), c.getPath());
+            assertThat(errors).anySatisfy(e -> assertThat(e).startsWith("  b: FAILED with exit code 3"));
+            assertThat(infos).anySatisfy(i -> assertThat(i).startsWith("  a: SUCCESS"));
+            assertThat(infos).anySatisfy(i -> assertThat(i).startsWith("  c: SUCCESS"));
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testParallelOutputIsPrefixed() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-run").toFile();
+        try {
+            val infos = new CopyOnWriteArrayList<String>();
+            val runner = createRunner(tempDir, infos, new CopyOnWriteArrayList<>());
+            val a = createProject(tempDir, "a", 0);
+            val b = createProject(tempDir, "b", 0);
+
+            runner.runTests(Arrays.asList(a, b), 2, 1);
+
+            assertThat(infos).contains("[a] Testing a", "[a] Done", "[b] Testing b", "[b] Done");
+            // The output of each process keeps its order
+            assertThat(infos.indexOf("[a] Done")).isGreaterThan(infos.indexOf("[a] Testing a"));
+            assertThat(infos.indexOf("[b] Done")).isGreaterThan(infos.indexOf("[b] Testing b"));
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testIncrementalTests() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-run").toFile();
+        try {
+            // Different projects with the same directory name must not share their fingerprints
+            val team1 = createProject(tempDir, "team1/flow", 0);
+            val team2 = createProject(tempDir, "team2/flow", 0);
+            val failing = createProject(tempDir, "team3/failing", 1);
+            val projects = Arrays.asList(team1, team2, failing);
+
+            assertThatThrownBy(() -> createRunner(tempDir, true, new ArrayList<>(), new ArrayList<>()).runTests(projects, 1, 1))
+                .isInstanceOf(MojoFailureException.class);
+            assertThat(getTestedProjects(tempDir)).containsExactly(team1.getPath(), team2.getPath(), failing.getPath());
+
+            // Only failed projects are tested again
+            new File(tempDir, "runs.log").delete();
+            assertThatThrownBy(() -> createRunner(tempDir, true, new ArrayList<>(), new ArrayList<>()).runTests(projects, 1, 1))
+                .isInstanceOf(MojoFailureException.class);
+            assertThat(getTestedProjects(tempDir)).containsExactly(failing.getPath());
+
+            // Changed projects are tested again
+            new File(tempDir, "runs.log").delete();
+            Files.write(new File(team1, "project.yml").toPath(), "name: changed\n".getBytes(StandardCharsets.UTF_8));
+            createRunner(tempDir, true, new ArrayList<>(), new ArrayList<>()).runTests(Arrays.asList(team1, team2), 1, 1);
+            assertThat(getTestedProjects(tempDir)).containsExactly(team1.getPath());
+
+            assertThat(FingerprintStore.load(new File(tempDir, "tests.fingerprints")).keys())
+                .containsExactly("resources/team1/flow", "resources/team2/flow");
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.val;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.DependencyResolutionResult;
+import org.apache.maven.project.ProjectDependenciesResolver;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.aether.graph.DependencyNode;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.dimajix.flowman.maven.plugin.mojos.StubMojo;
+
+
+public class TaskTest {
+    private static class EmptyResolutionResult implements DependencyResolutionResult {
+        @Override
+        public DependencyNode getDependencyGraph() {
+            return null;
+        }
+        @Override
+        public List<org.eclipse.aether.graph.Dependency> getDependencies() {
+            return Collections.emptyList();
+        }
+        @Override
+        public List<org.eclipse.aether.graph.Dependency> getResolvedDependencies() {
+            return Collections.emptyList();
+        }
+        @Override
+        public List<org.eclipse.aether.graph.Dependency> getUnresolvedDependencies() {
+            return Collections.emptyList();
+        }
+        @Override
+        public List<Exception> getCollectionErrors() {
+            return Collections.emptyList();
+        }
+        @Override
+        public List<Exception> getResolutionErrors(org.eclipse.aether.graph.Dependency dependency) {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void testResolveDependenciesIsCached() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-task").toFile();
+        try {
+            val resolutions = new AtomicInteger();
+            val resolver = (ProjectDependenciesResolver)request -> {
+                resolutions.incrementAndGet();
+                return new EmptyResolutionResult();
+            };
+            val mojo = new StubMojo(tempDir).withDependenciesResolver(resolver);
+            val project = mojo.getMavenProject();
+
+            val first = new Task(mojo, project) {}.resolveDependencies();
+            val second = new Task(mojo, project) {}.resolveDependencies();
+            assertThat(resolutions.get()).isEqualTo(1);
+            assertThat(second).isSameAs(first);
+
+            // Different dependencies require a new resolution
+            val dependency = new Dependency();
+            dependency.setGroupId("com.example");
+            dependency.setArtifactId("other");
+            dependency.setVersion("1.0");
+            project.getDependencies().add(dependency);
+            val third = new Task(mojo, project) {}.resolveDependencies();
+            assertThat(resolutions.get()).isEqualTo(2);
+            assertThat(third).isNotSameAs(first);
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import lombok.val;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+public class TestShardsTest {
+    @Test
+    public void testDiscoverTests() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-tests").toFile();
+        try {
+            new File(tempDir, "test").mkdirs();
+            Files.write(new File(tempDir, "project.yml").toPath(), "name: test\nmodules:\n  - test\n  - missing\n".getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(tempDir, "test/b.yml").toPath(), "tests:\n  test_3: {}\n".getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(tempDir, "test/a.yml").toPath(), "tests:\n  test_1: {}\n  test_2: {}\nmappings: {}\n".getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(tempDir, "test/c.yml").toPath(), "mappings:\n  test_4: {}\n".getBytes(StandardCharsets.UTF_8));
+
+            assertThat(TestShards.discoverTests(tempDir)).containsExactly("test_1", "test_2", "test_3");
+
+            // Invalid files would result in an incomplete list of tests
+            Files.write(new File(tempDir, "test/d.yml").toPath(), "tests: [\n".getBytes(StandardCharsets.UTF_8));
+            assertThatThrownBy(() -> TestShards.discoverTests(tempDir)).isInstanceOf(IOException.class);
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testPartition() {
+        val durations = new HashMap<String, Long>();
+        durations.put("a", 10L);
+        durations.put("b", 50L);
+        durations.put("c", 20L);
+        durations.put("d", 30L);
+        durations.put("e", 40L);
+
+        val shards = TestShards.partition(Arrays.asList("a", "b", "c", "d", "e"), 2, durations::get);
+        assertThat(shards).containsExactly(Arrays.asList("a", "b", "c"), Arrays.asList("d", "e"));
+
+        assertThat(TestShards.partition(Arrays.asList("a", "b"), 3, durations::get)).hasSize(2);
+    }
+}
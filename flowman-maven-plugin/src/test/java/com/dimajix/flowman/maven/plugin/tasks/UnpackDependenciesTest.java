@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.val;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.codehaus.plexus.interpolation.fixed.FixedStringSearchInterpolator;
+import org.codehaus.plexus.interpolation.fixed.PropertiesBasedValueSource;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.dimajix.flowman.maven.plugin.mojos.StubMojo;
+
+
+public class UnpackDependenciesTest {
+    @Test
+    public void testUnpackUsesCache() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-unpack").toFile();
+        try {
+            val archive = new File(tempDir, "flowman-dist-1.0-bin.tar.gz");
+            Files.write(archive.toPath(), "archive".getBytes(StandardCharsets.UTF_8));
+            val artifact = new DefaultArtifact("com.dimajix.flowman", "flowman-dist", "1.0", "compile", "tar.gz", "bin", new DefaultArtifactHandler("tar.gz"));
+            artifact.setFile(archive);
+
+            val mojo = new StubMojo(tempDir);
+            val unpacks = new AtomicInteger();
+            val unpack = new UnpackDependencies(mojo, mojo.getMavenProject()) {
+                @Override
+                void executeUnpack(Artifact artifact, File outputDirectory) {
+                    unpacks.incrementAndGet();
+                    try {
+                        new File(outputDirectory, "conf").mkdirs();
+                        Files.write(new File(outputDirectory, "conf/default-namespace.yml").toPath(), "name: @name@\n".getBytes(StandardCharsets.UTF_8));
+                    }
+                    catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            };
+
+            val package1 = new File(tempDir, "package1");
+            val package2 = new File(tempDir, "package2");
+            unpack.unpack(Collections.singletonList(artifact), package1);
+            unpack.unpack(Collections.singletonList(artifact), package2);
+            assertThat(unpacks.get()).isEqualTo(1);
+            assertThat(new File(package1, "conf/default-namespace.yml")).hasContent("name: @name@");
+            assertThat(new File(package2, "conf/default-namespace.yml")).hasContent("name: @name@");
+
+            // Filtering a file of one package must neither modify the cache nor other packages
+            val file = new File(package1, "conf/default-namespace.yml");
+            val source = new File(tempDir, "default-namespace.yml");
+            Files.write(source.toPath(), "name: @name@\n".getBytes(StandardCharsets.UTF_8));
+            val props = new Properties();
+            props.setProperty("name", "package1");
+            val filter = new ResourceFilter(FixedStringSearchInterpolator.create(new PropertiesBasedValueSource(props)));
+            filter.filter(new ResourceFilter.Resource(source, file, StandardCharsets.UTF_8, true));
+
+            assertThat(file).hasContent("name: package1");
+            assertThat(new File(package2, "conf/default-namespace.yml")).hasContent("name: @name@");
+            val cached = FileUtils.getFiles(new File(tempDir, ".flowman-cache/unpack"), "**/default-namespace.yml", null);
+            assertThat(cached).hasSize(1);
+            assertThat(cached.get(0)).hasContent("name: @name@");
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
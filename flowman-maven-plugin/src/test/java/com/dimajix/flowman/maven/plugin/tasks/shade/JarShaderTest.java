@@ -0,0 +1,221 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.tasks.shade;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugins.shade.DefaultShader;
+import org.apache.maven.plugins.shade.ShadeRequest;
+import org.apache.maven.plugins.shade.filter.SimpleFilter;
+import org.apache.maven.plugins.shade.resource.ApacheLicenseResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ApacheNoticeResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ManifestResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ServicesResourceTransformer;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class JarShaderTest {
+    private static final String MAIN_CLASS = "com.example.Main";
+    private static final List<String> FILTERS = Arrays.asList(
+        "META-INF/versions/**",
+        "META-INF/MANIFEST.MF",
+        "META-INF/DEPENDENCIES",
+        "META-INF/*.SF",
+        "META-INF/*.DAS",
+        "META-INF/*.RSA"
+    );
+
+    private static void createJar(File file, String... entries) throws IOException {
+        try (val out = new JarOutputStream(Files.newOutputStream(file.toPath()))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static File getJar(Class<?> clazz) throws URISyntaxException {
+        return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    /**
+     * Reads all entries via a ZipInputStream, which also verifies sizes and checksums
+     */
+    private static Map<String, String> readJar(File file) throws IOException {
+        val result = new LinkedHashMap<String, String>();
+        try (val in = new ZipInputStream(Files.newInputStream(file.toPath()))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                assertThat(result).doesNotContainKey(entry.getName());
+                result.put(entry.getName(), new String(IOUtil.toByteArray(in), StandardCharsets.ISO_8859_1));
+            }
+        }
+        return result;
+    }
+
+    private static void shadeWithMavenShadePlugin(List<File> jars, File output) throws IOException, MojoExecutionException {
+        val manifest = new ManifestResourceTransformer();
+        manifest.setManifestEntries(Collections.singletonMap("Main-Class", MAIN_CLASS));
+
+        val request = new ShadeRequest();
+        request.setJars(new LinkedHashSet<>(jars));
+        request.setUberJar(output);
+        request.setFilters(Collections.singletonList(new SimpleFilter(new LinkedHashSet<>(jars), Collections.emptySet(), new LinkedHashSet<>(FILTERS))));
+        request.setRelocators(Collections.emptyList());
+        request.setResourceTransformers(Arrays.asList(
+            new ApacheLicenseResourceTransformer(),
+            new ApacheNoticeResourceTransformer(),
+            new ServicesResourceTransformer(),
+            manifest
+        ));
+        new DefaultShader().shade(request);
+    }
+
+    private static List<File> createTestJars(File tempDir) throws Exception {
+        val project = new File(tempDir, "project.jar");
+        createJar(project,
+            "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\nCreated-By: test\r\n\r\n",
+            "com/example/Main.class", "main",
+            "com/example/Dup.class", "first",
+            "conf/default-namespace.yml", "first",
+            "META-INF/NOTICE", "Flowman\nCopyright 2023 The Flowman Authors\n\nSome more text\n",
+            "META-INF/services/com.example.Service", "com.example.First\n# comment\n"
+        );
+        val dependency = new File(tempDir, "dependency.jar");
+        createJar(dependency,
+            "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\nMain-Class: other.Main\r\n\r\n",
+            "META-INF/INDEX.LIST", "index",
+            "META-INF/DEPENDENCIES", "dependencies",
+            "META-INF/SIGNER.SF", "signature",
+            "META-INF/LICENSE", "license",
+            "META-INF/LICENSE.txt", "license",
+            "META-INF/license.md", "license",
+            "META-INF/NOTICE.txt", "This product includes/uses software(s) developed by\nSomebody\n- lib1\n- lib2\n\nOther text\n",
+            "META-INF/services/com.example.Service", "com.example.Second\n",
+            "META-INF/services/com.example.Other", "com.example.Third",
+            "META-INF/versions/9/com/example/Dup.class", "versioned",
+            "module-info.class", "module",
+            "com/example/Dup.class", "second",
+            "com/example/Other.class", "other",
+            "conf/default-namespace.yml", "second",
+            "conf/nested/dir/file.txt", "text"
+        );
+        // Use some real jars containing notices, licenses and services
+        return Arrays.asList(project, dependency, getJar(StringUtils.class), getJar(ObjectMapper.class), getJar(JarShader.class.getClassLoader().loadClass("org.apache.commons.compress.archivers.zip.ZipFile")));
+    }
+
+    @Test
+    public void testCompatibility() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-shade").toFile();
+        try {
+            val jars = createTestJars(tempDir);
+
+            val expected = new File(tempDir, "expected.jar");
+            shadeWithMavenShadePlugin(jars, expected);
+            val result = new File(tempDir, "result.jar");
+            new JarShader(new SystemStreamLog(), FILTERS, MAIN_CLASS).shade(jars, result);
+
+            val expectedEntries = readJar(expected);
+            val resultEntries = readJar(result);
+            assertThat(resultEntries).isEqualTo(expectedEntries);
+            assertThat(resultEntries.keySet().iterator().next()).isEqualTo("META-INF/MANIFEST.MF");
+            assertThat(resultEntries.get("com/example/Dup.class")).isEqualTo("first");
+            assertThat(resultEntries.get("META-INF/services/com.example.Service")).isEqualTo("com.example.First\n# comment\ncom.example.Second\n");
+            assertThat(resultEntries.get("META-INF/MANIFEST.MF")).contains("Main-Class: " + MAIN_CLASS).contains("Created-By: test");
+            assertThat(resultEntries).doesNotContainKeys("META-INF/LICENSE", "module-info.class", "META-INF/SIGNER.SF");
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testConflicts() throws IOException {
+        val tempDir = Files.createTempDirectory("flowman-shade").toFile();
+        try {
+            val first = new File(tempDir, "first.jar");
+            createJar(first, "a/A.class", "a", "a/B.class", "b", "META-INF/NOTICE", "first");
+            val second = new File(tempDir, "second.jar");
+            createJar(second, "a/A.class", "a2", "res.txt", "res", "META-INF/NOTICE", "second");
+            val third = new File(tempDir, "third.jar");
+            createJar(third, "a/A.class", "a3", "a/B.class", "b3", "res.txt", "res3");
+
+            val log = new SystemStreamLog();
+            val indices = Arrays.asList(
+                JarIndex.scan(first, name -> false),
+                JarIndex.scan(second, name -> false),
+                JarIndex.scan(third, name -> false)
+            );
+            val plan = ShadePlan.create(indices, MAIN_CLASS, log);
+
+            assertThat(plan.getConflicts()).containsOnlyKeys("a/A.class", "a/B.class", "res.txt");
+            assertThat(plan.getConflicts().get("a/A.class")).containsExactly(first, second, third);
+            assertThat(plan.getConflicts().get("a/B.class")).containsExactly(first, third);
+            assertThat(plan.getConflicts().get("res.txt")).containsExactly(second, third);
+            assertThat(plan.getItems().get(third)).isEmpty();
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    @Test
+    public void testLayer() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-shade").toFile();
+        try {
+            val jars = createTestJars(tempDir);
+            val shader = new JarShader(new SystemStreamLog(), FILTERS, MAIN_CLASS);
+
+            val expected = new File(tempDir, "expected.jar");
+            shader.shade(jars, expected);
+
+            val layerJar = new File(tempDir, "layer.jar");
+            val layerIndex = new File(tempDir, "layer.index");
+            shader.createLayer(jars.subList(1, jars.size()), layerJar, layerIndex);
+            val result = new File(tempDir, "result.jar");
+            shader.shade(jars.subList(0, 1), layerJar, layerIndex, result);
+
+            assertThat(readJar(result)).isEqualTo(readJar(expected));
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import lombok.val;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class ChecksumsTest {
+    @Test
+    public void testCachedSha256() throws IOException {
+        val tempDir = Files.createTempDirectory("checksums").toFile();
+        try {
+            val file = new File(tempDir, "artifact.jar");
+            Files.write(file.toPath(), "artifact".getBytes(StandardCharsets.UTF_8));
+            file.setLastModified(1000000000000L);
+            val checksum = Checksums.sha256(file);
+
+            // Checksums stored by a previous build are reused, as long as size and modification time are unchanged
+            val storeFile = new File(tempDir, "checksums.properties");
+            val previous = FingerprintStore.load(storeFile);
+            previous.put(file.getAbsolutePath(), file.length() + ":" + file.lastModified() + ":stored");
+            previous.save();
+            assertThat(Checksums.cachedSha256(file, storeFile)).isEqualTo("stored");
+
+            // Changed files are hashed again, and the new checksum is persisted
+            file.setLastModified(1000000001000L);
+            assertThat(Checksums.cachedSha256(file, storeFile)).isEqualTo(checksum);
+            assertThat(FingerprintStore.load(storeFile).get(file.getAbsolutePath())).isEqualTo(file.length() + ":" + file.lastModified() + ":" + checksum);
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
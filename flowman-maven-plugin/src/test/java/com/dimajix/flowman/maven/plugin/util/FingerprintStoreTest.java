@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import lombok.val;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class FingerprintStoreTest {
+    @Test
+    public void testRoundTrip() throws IOException {
+        val tempDir = Files.createTempDirectory("fingerprints").toFile();
+        val file = new File(tempDir, "sub/test.fingerprints");
+        val store = FingerprintStore.load(file);
+        assertThat(store.keys()).isEmpty();
+
+        store.put("flow/project.yml", "abc;12:34");
+        store.put("conf/default-namespace.yml", "def");
+        store.save();
+
+        val store2 = FingerprintStore.load(file);
+        assertThat(store2.keys()).containsExactly("conf/default-namespace.yml", "flow/project.yml");
+        assertThat(store2.get("flow/project.yml")).isEqualTo("abc;12:34");
+
+        store2.remove("flow/project.yml");
+        assertThat(store2.get("flow/project.yml")).isNull();
+
+        FileUtils.deleteDirectory(tempDir);
+    }
+}
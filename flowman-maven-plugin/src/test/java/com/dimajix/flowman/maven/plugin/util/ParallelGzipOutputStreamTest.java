@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.plugin.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import lombok.val;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class ParallelGzipOutputStreamTest {
+    private static byte[] roundTrip(byte[] data, int chunkSize) throws IOException {
+        val compressed = new ByteArrayOutputStream();
+        try (val out = new ParallelGzipOutputStream(compressed, 32 * 1024, 4, Deflater.DEFAULT_COMPRESSION)) {
+            for (int i = 0; i < data.length; i += chunkSize) {
+                out.write(data, i, Math.min(chunkSize, data.length - i));
+            }
+        }
+        try (val in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            return IOUtil.toByteArray(in);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        val random = new Random(1);
+        val text = new StringBuilder();
+        while (text.length() < 1000000)
+            text.append("line ").append(random.nextInt(1000)).append(": some text which can be compressed well\n");
+        val compressible = text.toString().getBytes();
+        val incompressible = new byte[300000];
+        random.nextBytes(incompressible);
+
+        assertThat(roundTrip(new byte[0], 1)).isEmpty();
+        assertThat(roundTrip(new byte[] { 42 }, 1)).containsExactly(42);
+        assertThat(roundTrip(compressible, 1000)).isEqualTo(compressible);
+        assertThat(roundTrip(compressible, 32 * 1024)).isEqualTo(compressible);
+        assertThat(roundTrip(incompressible, 77777)).isEqualTo(incompressible);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.tools.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Stub of the Flowman driver for testing the execution of Flowman projects. Each run of a project is appended to
+ * the file specified in the environment variable FLOWMAN_TEST_LOG. The exit code is read from the file "exit-code"
+ * within the project directory, all runs of projects without such a file are successful.
+ */
+public final class Driver {
+    private Driver() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File project = null;
+        for (int i = 0; i < args.length - 1; ++i) {
+            if (args[i].equals("-f"))
+                project = new File(args[i + 1]);
+        }
+        if (project == null)
+            throw new IllegalArgumentException("No project specified");
+
+        System.out.println("Testing " + project.getName());
+        System.out.println("Done");
+        String testLog = System.getenv("FLOWMAN_TEST_LOG");
+        if (testLog != null)
+            Files.write(new File(testLog).toPath(), (project.getPath() + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        File exitCode = new File(project, "exit-code");
+        if (exitCode.exists())
+            System.exit(Integer.parseInt(new String(Files.readAllBytes(exitCode.toPath()), StandardCharsets.UTF_8).trim()));
+    }
+}
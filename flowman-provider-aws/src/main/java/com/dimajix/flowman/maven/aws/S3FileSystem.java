@@ -19,19 +19,78 @@ package com.dimajix.flowman.maven.aws;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressEventType;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.transfer.Transfer;
+import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import com.amazonaws.services.s3.transfer.Upload;
 import lombok.val;
 import lombok.var;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.dimajix.flowman.maven.fs.FileStatus;
 import com.dimajix.flowman.maven.fs.FileSystem;
 
 
+/**
+ * File system for uploading artifacts to S3. A single client and transfer manager are shared by all instances, such
+ * that connections and upload threads are reused by all uploads within a Maven session. Large files are uploaded
+ * as multiple parts in parallel, which can be configured via the system properties "flowman.s3.partSize" (in MB)
+ * and "flowman.s3.threads".
+ */
 public class S3FileSystem implements FileSystem {
+    private static final Logger log = LoggerFactory.getLogger(S3FileSystem.class);
+    // S3 accepts at most 1000 keys per DeleteObjects request
+    private static final int MAX_DELETE_KEYS = 1000;
+    private static AmazonS3 sharedClient = null;
+    private static TransferManager sharedTransferManager = null;
+
+    private final AmazonS3 client;
+    // Transfer manager of an injected client. The default client uses the shared transfer manager instead.
+    private final TransferManager clientTransferManager;
+
+    public S3FileSystem() {
+        this.client = null;
+        this.clientTransferManager = null;
+    }
+
+    S3FileSystem(AmazonS3 client) {
+        this.client = client;
+        this.clientTransferManager = createTransferManager(client);
+    }
+
     @Override
     public String getScheme() {
         return "s3";
@@ -39,46 +98,162 @@ public class S3FileSystem implements FileSystem {
 
     @Override
     public void put(URI target, File source) throws IOException {
-        val s3Client = AmazonS3ClientBuilder.defaultClient();
-
         val bucket = getBucket(target);
         val path = getPath(target);
 
-        s3Client.putObject(bucket, path, source);
+        val upload = getTransferManager().upload(bucket, path, source);
+        waitForCompletion(upload, "s3://" + bucket + "/" + path, true);
     }
 
     @Override
     public void putAll(URI target, File sources) throws IOException {
-        val s3Client = AmazonS3ClientBuilder.defaultClient();
-
-        val tm = TransferManagerBuilder.standard().withS3Client(s3Client).build();
-
         val bucket = getBucket(target);
         val path = getPath(target);
-        val upload = tm.uploadDirectory(bucket, path, sources,true);
-        try {
-            upload.waitForCompletion();
-        } catch (InterruptedException e) {
-            throw new IOException(e);
-        }
+
+        val upload = getTransferManager().uploadDirectory(bucket, path, sources,true);
+        waitForCompletion(upload, "s3://" + bucket + "/" + path, true);
     }
 
     @Override
     public void delete(URI target, boolean recursive) throws IOException {
-        val s3Client = AmazonS3ClientBuilder.defaultClient();
+        val s3Client = getClient();
 
         val bucket = getBucket(target);
-        val path = getPath(target);
+        // Directory URIs end with a "/", which is not part of the object key
+        val path = getPath(target).replaceAll("/+$", "");
 
+        if (s3Client.doesObjectExist(bucket, path)) {
+            s3Client.deleteObject(bucket, path);
+        }
+        if (!recursive)
+            return;
+
+        // Only list objects within the directory, otherwise siblings sharing the same name prefix would be deleted
         val listObjectsRequest = new ListObjectsRequest()
             .withBucketName(bucket)
-            .withPrefix(path);
+            .withPrefix(path.isEmpty() ? "" : path + "/");
+
+        // Delete all objects in batches, while the next page is being listed
+        val executor = Executors.newFixedThreadPool(getThreadCount());
+        try {
+            val deletions = new ArrayList<Future<?>>();
+            var objectListing = s3Client.listObjects(listObjectsRequest);
+            while (true) {
+                val keys = objectListing.getObjectSummaries().stream()
+                    .map(S3ObjectSummary::getKey)
+                    .collect(Collectors.toList());
+                deletions.addAll(submitDeletes(executor, s3Client, bucket, keys));
+                if (objectListing.isTruncated()) {
+                    objectListing = s3Client.listNextBatchOfObjects(objectListing);
+                } else {
+                    break;
+                }
+            }
+            for (Future<?> deletion : deletions) {
+                deletion.get();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while deleting 's3://" + bucket + "/" + path + "'", ex);
+        }
+        catch (ExecutionException ex) {
+            throw new IOException("Error deleting 's3://" + bucket + "/" + path + "'", ex.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Synchronizes the target prefix with a local directory. Files are compared by their size and their ETag, which
+     * is the MD5 checksum for simple uploads or the checksum of all part checksums for multipart uploads.
+     */
+    @Override
+    public long sync(URI target, File sources, boolean deleteExtraneous) throws IOException {
+        val s3Client = getClient();
+        val bucket = getBucket(target);
+        val path = getPath(target);
+        val prefix = path.isEmpty() || path.endsWith("/") ? path : path + "/";
+
+        val existingObjects = new HashMap<String, S3ObjectSummary>();
+        var objectListing = s3Client.listObjects(new ListObjectsRequest().withBucketName(bucket).withPrefix(prefix));
+        while (true) {
+            objectListing.getObjectSummaries().forEach(s -> existingObjects.put(s.getKey(), s));
+            if (objectListing.isTruncated()) {
+                objectListing = s3Client.listNextBatchOfObjects(objectListing);
+            } else {
+                break;
+            }
+        }
+
+        val root = sources.toPath();
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        val transferManager = getTransferManager();
+        val uploads = new LinkedHashMap<String, Upload>();
+        var bytes = 0L;
+        for (Path file : files) {
+            val key = prefix + root.relativize(file).toString().replace(File.separatorChar, '/');
+            val existing = existingObjects.remove(key);
+            if (existing == null || !isUnchanged(existing, file.toFile())) {
+                uploads.put(key, transferManager.upload(bucket, key, file.toFile()));
+                bytes += file.toFile().length();
+            }
+        }
+        log.info("Uploading " + uploads.size() + " new or changed files of " + files.size() + " files to 's3://" + bucket + "/" + prefix + "'");
+        for (Map.Entry<String, Upload> upload : uploads.entrySet()) {
+            waitForCompletion(upload.getValue(), "s3://" + bucket + "/" + upload.getKey(), false);
+        }
+
+        if (deleteExtraneous && !existingObjects.isEmpty()) {
+            log.info("Deleting " + existingObjects.size() + " files from 's3://" + bucket + "/" + prefix + "'");
+            val executor = Executors.newFixedThreadPool(getThreadCount());
+            try {
+                for (Future<?> deletion : submitDeletes(executor, s3Client, bucket, new ArrayList<>(existingObjects.keySet()))) {
+                    deletion.get();
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while deleting files from 's3://" + bucket + "/" + prefix + "'", ex);
+            }
+            catch (ExecutionException ex) {
+                throw new IOException("Error deleting files from 's3://" + bucket + "/" + prefix + "'", ex.getCause());
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+        return bytes;
+    }
 
-        var objectListing = s3Client.listObjects(listObjectsRequest);
+    /**
+     * Lists all objects below a prefix. Since S3 has no directories, the status of a directory is aggregated from
+     * all objects sharing the same prefix.
+     */
+    @Override
+    public List<FileStatus> list(URI directory) throws IOException {
+        val s3Client = getClient();
+        val bucket = getBucket(directory);
+        val path = getPath(directory);
+        val prefix = path.isEmpty() || path.endsWith("/") ? path : path + "/";
 
+        val entries = new TreeMap<String, FileStatus>();
+        var objectListing = s3Client.listObjects(new ListObjectsRequest().withBucketName(bucket).withPrefix(prefix));
         while (true) {
-            for (val objectSummary : objectListing.getObjectSummaries()) {
-                s3Client.deleteObject(bucket, objectSummary.getKey());
+            for (S3ObjectSummary summary : objectListing.getObjectSummaries()) {
+                val relativePath = summary.getKey().substring(prefix.length());
+                val separator = relativePath.indexOf('/');
+                val name = separator < 0 ? relativePath : relativePath.substring(0, separator);
+                if (name.isEmpty())
+                    continue;
+                val previous = entries.get(name);
+                val size = summary.getSize() + (previous != null ? previous.getSize() : 0);
+                val modificationTime = Math.max(summary.getLastModified().getTime(), previous != null ? previous.getModificationTime() : 0);
+                entries.put(name, new FileStatus(name, separator >= 0, size, modificationTime));
             }
             if (objectListing.isTruncated()) {
                 objectListing = s3Client.listNextBatchOfObjects(objectListing);
@@ -86,9 +261,202 @@ public class S3FileSystem implements FileSystem {
                 break;
             }
         }
+        return new ArrayList<>(entries.values());
+    }
 
-        if (s3Client.doesObjectExist(bucket, path)) {
-            s3Client.deleteObject(bucket, path);
+    @Override
+    public FileStatus stat(URI file) throws IOException {
+        val bucket = getBucket(file);
+        val path = getPath(file);
+        try {
+            val metadata = getClient().getObjectMetadata(bucket, path);
+            val name = path.substring(path.lastIndexOf('/') + 1);
+            return new FileStatus(name, false, metadata.getContentLength(), metadata.getLastModified().getTime());
+        }
+        catch (AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404)
+                return null;
+            throw new IOException("Error retrieving status of 's3://" + bucket + "/" + path + "'", ex);
+        }
+    }
+
+    @Override
+    public String checksum(URI file) throws IOException {
+        val bucket = getBucket(file);
+        val path = getPath(file) + ".sha256";
+        try {
+            val content = getClient().getObjectAsString(bucket, path).trim();
+            return content.isEmpty() ? null : content.split("\\s+")[0];
+        }
+        catch (AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404)
+                return null;
+            throw new IOException("Error reading checksum 's3://" + bucket + "/" + path + "'", ex);
+        }
+    }
+
+    private static List<Future<?>> submitDeletes(ExecutorService executor, AmazonS3 s3Client, String bucket, List<String> keys) {
+        val deletions = new ArrayList<Future<?>>();
+        for (int i = 0; i < keys.size(); i += MAX_DELETE_KEYS) {
+            val batch = keys.subList(i, Math.min(i + MAX_DELETE_KEYS, keys.size())).stream()
+                .map(DeleteObjectsRequest.KeyVersion::new)
+                .collect(Collectors.toList());
+            val request = new DeleteObjectsRequest(bucket).withKeys(batch).withQuiet(true);
+            deletions.add(executor.submit(() -> s3Client.deleteObjects(request)));
+        }
+        return deletions;
+    }
+
+    /**
+     * Checks if an S3 object has the same size and ETag as a local file. The ETag of multipart uploads can only be
+     * reproduced for objects uploaded with the currently configured part size, all others are considered changed.
+     */
+    private static boolean isUnchanged(S3ObjectSummary summary, File file) throws IOException {
+        if (summary.getSize() != file.length())
+            return false;
+        val etag = summary.getETag().replace("\"", "");
+        val separator = etag.indexOf('-');
+        if (separator < 0)
+            return etag.equalsIgnoreCase(md5(file, 0, file.length()));
+
+        val parts = Integer.parseInt(etag.substring(separator + 1));
+        val partSize = getPartSize();
+        if (parts != (file.length() + partSize - 1) / partSize)
+            return false;
+        val digest = newMd5();
+        for (long offset = 0; offset < file.length(); offset += partSize)
+            digest.update(fromHex(md5(file, offset, Math.min(partSize, file.length() - offset))));
+        return etag.equalsIgnoreCase(toHex(digest.digest()) + "-" + parts);
+    }
+
+    private static String md5(File file, long offset, long length) throws IOException {
+        val digest = newMd5();
+        val buffer = new byte[64 * 1024];
+        try (val channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.position(offset);
+            val in = Channels.newInputStream(channel);
+            var remaining = length;
+            while (remaining > 0) {
+                val n = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if (n < 0)
+                    break;
+                digest.update(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 is not supported by this JVM", ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        val result = new StringBuilder();
+        for (byte b : bytes)
+            result.append(String.format("%02x", b));
+        return result.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        val result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = (byte)Integer.parseInt(hex.substring(2*i, 2*i + 2), 16);
+        return result;
+    }
+
+    private AmazonS3 getClient() {
+        return client != null ? client : getSharedClient();
+    }
+
+    private static synchronized AmazonS3 getSharedClient() {
+        if (sharedClient == null) {
+            sharedClient = AmazonS3ClientBuilder.defaultClient();
+        }
+        return sharedClient;
+    }
+
+    private static long getPartSize() {
+        return Long.getLong("flowman.s3.partSize", 16) * 1024 * 1024;
+    }
+
+    private static int getThreadCount() {
+        return Integer.getInteger("flowman.s3.threads", 10);
+    }
+
+    private TransferManager getTransferManager() {
+        return clientTransferManager != null ? clientTransferManager : getSharedTransferManager();
+    }
+
+    private static synchronized TransferManager getSharedTransferManager() {
+        if (sharedTransferManager == null) {
+            sharedTransferManager = createTransferManager(getSharedClient());
+        }
+        return sharedTransferManager;
+    }
+
+    private static TransferManager createTransferManager(AmazonS3 client) {
+        val partSize = getPartSize();
+        val threads = getThreadCount();
+        val threadCount = new AtomicInteger();
+        return TransferManagerBuilder.standard()
+            .withS3Client(client)
+            .withMinimumUploadPartSize(partSize)
+            .withMultipartUploadThreshold(partSize)
+            .withExecutorFactory(() -> Executors.newFixedThreadPool(threads, r -> {
+                // Use daemon threads, such that a transfer manager does not keep Maven alive
+                val thread = new Thread(r, "flowman-s3-transfer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }))
+            .withShutDownThreadPools(false)
+            .build();
+    }
+
+    private void waitForCompletion(Transfer transfer, String target, boolean logProgress) throws IOException {
+        if (logProgress)
+            transfer.addProgressListener(new ProgressLogger(transfer, target));
+        try {
+            transfer.waitForCompletion();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading to '" + target + "'", ex);
+        }
+        catch (AmazonClientException ex) {
+            throw new IOException("Error uploading to '" + target + "'", ex);
+        }
+    }
+
+    /**
+     * Logs the progress of a transfer in steps of 10 percent
+     */
+    private static class ProgressLogger implements ProgressListener {
+        private final Transfer transfer;
+        private final String target;
+        private int lastStep = 0;
+
+        ProgressLogger(Transfer transfer, String target) {
+            this.transfer = transfer;
+            this.target = target;
+        }
+
+        @Override
+        public synchronized void progressChanged(ProgressEvent event) {
+            if (event.getEventType() != ProgressEventType.REQUEST_BYTE_TRANSFER_EVENT)
+                return;
+            val progress = transfer.getProgress();
+            val step = (int)(progress.getPercentTransferred() / 10);
+            if (step > lastStep && progress.getTotalBytesToTransfer() > 0) {
+                lastStep = step;
+                log.info(String.format("Uploading to %s: %d%% (%d of %d MB)", target, step * 10,
+                    progress.getBytesTransferred() / (1024 * 1024), progress.getTotalBytesToTransfer() / (1024 * 1024)));
+            }
         }
     }
 
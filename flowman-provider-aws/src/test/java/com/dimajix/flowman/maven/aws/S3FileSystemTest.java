@@ -0,0 +1,167 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.aws;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import lombok.val;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class S3FileSystemTest {
+    /**
+     * Minimal in-memory S3 implementing only the operations required for uploading and deleting objects
+     */
+    private static class InMemoryS3 {
+        final ConcurrentSkipListMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+        final NavigableSet<String> keys = objects.keySet();
+        final List<Integer> deleteRequests = new CopyOnWriteArrayList<>();
+        final List<String> uploads = new CopyOnWriteArrayList<>();
+        int singleDeletes = 0;
+
+        AmazonS3 proxy() {
+            return (AmazonS3)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{AmazonS3.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "listObjects":
+                        val request = (ListObjectsRequest)args[0];
+                        return list(request.getBucketName(), request.getPrefix(), null);
+                    case "listNextBatchOfObjects":
+                        val previous = (ObjectListing)args[0];
+                        return list(previous.getBucketName(), previous.getPrefix(), previous.getNextMarker());
+                    case "deleteObjects":
+                        val deleteRequest = (DeleteObjectsRequest)args[0];
+                        deleteRequests.add(deleteRequest.getKeys().size());
+                        deleteRequest.getKeys().forEach(k -> keys.remove(k.getKey()));
+                        return new DeleteObjectsResult(Collections.emptyList());
+                    case "deleteObject":
+                        ++singleDeletes;
+                        keys.remove((String)args[1]);
+                        return null;
+                    case "doesObjectExist":
+                        return keys.contains((String)args[1]);
+                    case "putObject":
+                        val putRequest = (PutObjectRequest)args[0];
+                        uploads.add(putRequest.getKey());
+                        objects.put(putRequest.getKey(), Files.readAllBytes(putRequest.getFile().toPath()));
+                        return new PutObjectResult();
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private static String md5(byte[] content) throws Exception {
+            val result = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(content))
+                result.append(String.format("%02x", b));
+            return result.toString();
+        }
+
+        private ObjectListing list(String bucket, String prefix, String marker) throws Exception {
+            val listing = new ObjectListing();
+            listing.setBucketName(bucket);
+            listing.setPrefix(prefix);
+            val tail = marker != null ? keys.tailSet(marker, false) : keys;
+            for (String key : tail) {
+                if (!key.startsWith(prefix))
+                    continue;
+                if (listing.getObjectSummaries().size() == 1000) {
+                    listing.setTruncated(true);
+                    break;
+                }
+                val summary = new S3ObjectSummary();
+                summary.setBucketName(bucket);
+                summary.setKey(key);
+                summary.setSize(objects.get(key).length);
+                summary.setETag(md5(objects.get(key)));
+                listing.getObjectSummaries().add(summary);
+                listing.setNextMarker(key);
+            }
+            return listing;
+        }
+    }
+
+    @Test
+    public void testDeleteInBatches() throws Exception {
+        val s3 = new InMemoryS3();
+        for (int i = 0; i < 2500; ++i)
+            s3.objects.put(String.format("deploy/flow/file-%05d.yml", i), new byte[0]);
+        s3.objects.put("deploy/flow", new byte[0]);
+        s3.objects.put("deploy/flow2/project.yml", new byte[0]);
+        s3.objects.put("other/file.yml", new byte[0]);
+        s3.objects.put("zzz/file.yml", new byte[0]);
+
+        val fs = new S3FileSystem(s3.proxy());
+        fs.delete(new URI("s3://bucket/deploy/flow"), true);
+
+        assertThat(s3.keys).containsExactly("deploy/flow2/project.yml", "other/file.yml", "zzz/file.yml");
+        assertThat(s3.deleteRequests).containsExactlyInAnyOrder(1000, 1000, 500);
+        assertThat(s3.singleDeletes).isEqualTo(1);
+    }
+
+    @Test
+    public void testSync() throws Exception {
+        val tempDir = Files.createTempDirectory("flowman-s3").toFile();
+        try {
+            new File(tempDir, "flows").mkdirs();
+            Files.write(new File(tempDir, "project.yml").toPath(), "name: test".getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(tempDir, "flows/a.yml").toPath(), "a: 1".getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(tempDir, "flows/b.yml").toPath(), "b: 1".getBytes(StandardCharsets.UTF_8));
+
+            val s3 = new InMemoryS3();
+            s3.objects.put("deploy/flow/project.yml", "name: test".getBytes(StandardCharsets.UTF_8));
+            s3.objects.put("deploy/flow/flows/a.yml", "a: 0".getBytes(StandardCharsets.UTF_8));
+            s3.objects.put("deploy/flow/flows/old.yml", "old: 1".getBytes(StandardCharsets.UTF_8));
+            s3.objects.put("deploy/flow2/project.yml", "name: other".getBytes(StandardCharsets.UTF_8));
+
+            val fs = new S3FileSystem(s3.proxy());
+            fs.sync(new URI("s3://bucket/deploy/flow"), tempDir, false);
+            assertThat(s3.uploads).containsExactlyInAnyOrder("deploy/flow/flows/a.yml", "deploy/flow/flows/b.yml");
+            assertThat(s3.keys).contains("deploy/flow/flows/old.yml");
+
+            s3.uploads.clear();
+            fs.sync(new URI("s3://bucket/deploy/flow"), tempDir, true);
+            assertThat(s3.uploads).isEmpty();
+            assertThat(s3.keys).containsExactly("deploy/flow/flows/a.yml", "deploy/flow/flows/b.yml", "deploy/flow/project.yml", "deploy/flow2/project.yml");
+            assertThat(new String(s3.objects.get("deploy/flow/flows/a.yml"), StandardCharsets.UTF_8)).isEqualTo("a: 1");
+        }
+        finally {
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+}
@@ -16,19 +16,64 @@
 
 package com.dimajix.flowman.maven.azure;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.util.BinaryData;
 import com.azure.identity.DefaultAzureCredentialBuilder;
+import com.azure.storage.common.ParallelTransferOptions;
+import com.azure.storage.common.StorageSharedKeyCredential;
 import com.azure.storage.file.datalake.DataLakeFileSystemClient;
 import com.azure.storage.file.datalake.DataLakeServiceClientBuilder;
+import com.azure.storage.file.datalake.models.ListPathsOptions;
+import com.azure.storage.file.datalake.options.DataLakePathDeleteOptions;
 import lombok.val;
 
+import com.dimajix.flowman.maven.fs.FileStatus;
 import com.dimajix.flowman.maven.fs.FileSystem;
 
 
+/**
+ * File system for uploading artifacts to Azure Data Lake Storage Gen2. Clients are cached per file system, such that
+ * credentials and connections are reused by all uploads within a Maven session. Files are uploaded in blocks in
+ * parallel, which can be configured via the system properties "flowman.azure.blockSize" (in MB) and
+ * "flowman.azure.concurrency", while "flowman.azure.threads" configures the number of files uploaded in parallel.
+ * A different endpoint serving the Data Lake (DFS) API can be set via "flowman.azure.endpoint", and a shared key can
+ * be provided via "flowman.azure.accountName" and "flowman.azure.accountKey".
+ */
 public class AzureBlobFileSystem implements FileSystem {
+    private static final Map<String, DataLakeFileSystemClient> clients = new ConcurrentHashMap<>();
+    private static TokenCredential credential = null;
+
+    private final DataLakeFileSystemClient client;
+
+    public AzureBlobFileSystem() {
+        this.client = null;
+    }
+
+    /**
+     * Creates a file system which uses the given client for all URIs, instead of creating clients per file system
+     */
+    AzureBlobFileSystem(DataLakeFileSystemClient client) {
+        this.client = client;
+    }
+
     @Override
     public String getScheme() {
         return "abfs";
@@ -36,48 +81,179 @@ public class AzureBlobFileSystem implements FileSystem {
 
     @Override
     public void put(URI target, File source) throws IOException {
-        val fileSystemClient = createClient(target);
-        val targetFile0 = target.getPath();
-        val targetFile = targetFile0.startsWith("/") ? targetFile0.substring(1) : targetFile0;
+        val fileSystemClient = getClient(target);
+        val targetFile = getPath(target);
         val targetDirectory = new File(targetFile).getParentFile();
 
-        fileSystemClient.createDirectoryIfNotExists(targetDirectory.toString());
+        if (targetDirectory != null)
+            fileSystemClient.createDirectoryIfNotExists(targetDirectory.toString());
 
-        val fileClient = fileSystemClient.createFile(targetFile, true);
-        fileClient.uploadFromFile(source.toString(), true);
+        upload(fileSystemClient, source, targetFile);
     }
 
     @Override
     public void putAll(URI target, File sources) throws IOException {
+        val fileSystemClient = getClient(target);
+        val targetDirectory = getPath(target);
+        val root = sources.toPath();
 
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(root)) {
+            paths = stream.sorted().collect(Collectors.toList());
+        }
+
+        // Create all directories first (parents before children), then upload all files in parallel
+        for (Path path : paths) {
+            if (Files.isDirectory(path))
+                fileSystemClient.createDirectoryIfNotExists(getTargetPath(targetDirectory, root, path));
+        }
+        val executor = Executors.newFixedThreadPool(Integer.getInteger("flowman.azure.threads", 8));
+        try {
+            val uploads = new ArrayList<Future<?>>();
+            for (Path path : paths) {
+                if (Files.isRegularFile(path)) {
+                    val targetFile = getTargetPath(targetDirectory, root, path);
+                    uploads.add(executor.submit(() -> upload(fileSystemClient, path.toFile(), targetFile)));
+                }
+            }
+            for (Future<?> upload : uploads) {
+                upload.get();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading '" + sources + "' to '" + target + "'", ex);
+        }
+        catch (ExecutionException ex) {
+            throw new IOException("Error uploading '" + sources + "' to '" + target + "'", ex.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
     }
 
     @Override
     public void delete(URI target, boolean recursive) throws IOException {
-        val fileSystemClient = createClient(target);
-        val targetFile = target.getPath();
-        val targetDirectory = new File(targetFile).getParent();
+        val fileSystemClient = getClient(target);
+        // Directory URIs end with a "/", which is not part of the path name
+        val path = getPath(target).replaceAll("/+$", "");
+        if (path.isEmpty())
+            throw new IOException("Refusing to delete root of file system '" + target + "'");
+
+        val fileClient = fileSystemClient.getFileClient(path);
+        if (!fileClient.exists())
+            return;
+        if (fileClient.getProperties().isDirectory()) {
+            val options = new DataLakePathDeleteOptions().setIsRecursive(recursive);
+            fileSystemClient.getDirectoryClient(path).deleteIfExistsWithResponse(options, null, null);
+        }
+        else {
+            fileClient.deleteIfExists();
+        }
+    }
+
+    @Override
+    public List<FileStatus> list(URI directory) throws IOException {
+        val fileSystemClient = getClient(directory);
+        val path = getPath(directory);
+        val directoryClient = fileSystemClient.getDirectoryClient(path);
+        if (!directoryClient.exists())
+            return new ArrayList<>();
+        return fileSystemClient.listPaths(new ListPathsOptions().setPath(path), null).stream()
+            .map(p -> new FileStatus(new File(p.getName()).getName(), p.isDirectory(), p.getContentLength(), p.getLastModified().toInstant().toEpochMilli()))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public FileStatus stat(URI file) throws IOException {
+        val path = getPath(file);
+        val fileClient = getClient(file).getFileClient(path);
+        if (!fileClient.exists())
+            return null;
+        val properties = fileClient.getProperties();
+        return new FileStatus(new File(path).getName(), properties.isDirectory(), properties.getFileSize(), properties.getLastModified().toInstant().toEpochMilli());
+    }
+
+    @Override
+    public String checksum(URI file) throws IOException {
+        val fileClient = getClient(file).getFileClient(getPath(file) + ".sha256");
+        if (!fileClient.exists())
+            return null;
+        val output = new ByteArrayOutputStream();
+        fileClient.read(output);
+        val content = new String(output.toByteArray(), StandardCharsets.UTF_8).trim();
+        return content.isEmpty() ? null : content.split("\\s+")[0];
+    }
 
-        val directoryClient = fileSystemClient.getDirectoryClient(targetDirectory);
-        directoryClient.deleteFileIfExists(targetFile);
+    /**
+     * Writes the pointer into a temporary file first, which then is renamed over the link. Since renames are atomic
+     * in the hierarchical namespace of ADLS Gen2, readers never see an empty or partially written pointer.
+     */
+    @Override
+    public void link(URI link, String target) throws IOException {
+        val fileSystemClient = getClient(link);
+        val path = getPath(link);
+        val parent = new File(path).getParent();
+        if (parent != null)
+            fileSystemClient.createDirectoryIfNotExists(parent);
 
-        if (recursive) {
-            directoryClient.deleteSubdirectoryIfExists(targetFile);
+        val tempClient = fileSystemClient.getFileClient(path + ".tmp-" + UUID.randomUUID());
+        try {
+            tempClient.upload(BinaryData.fromString(target), true);
+            tempClient.rename(null, path);
+        }
+        catch (RuntimeException ex) {
+            tempClient.deleteIfExists();
+            throw new IOException("Error switching link '" + link + "' to '" + target + "'", ex);
         }
     }
 
-    private DataLakeFileSystemClient createClient(URI uri) {
-        val host = uri.getHost();
-        val fileSystemName = uri.getUserInfo();
-        val endpoint = "https://" + host;
+    private static void upload(DataLakeFileSystemClient fileSystemClient, File source, String targetFile) {
+        val blockSize = Long.getLong("flowman.azure.blockSize", 8) * 1024 * 1024;
+        val options = new ParallelTransferOptions()
+            .setBlockSizeLong(blockSize)
+            .setMaxSingleUploadSizeLong(blockSize)
+            .setMaxConcurrency(Integer.getInteger("flowman.azure.concurrency", 8));
+        fileSystemClient.getFileClient(targetFile).uploadFromFile(source.toString(), options, null, null, null, null);
+    }
+
+    static String getPath(URI target) {
+        val path = target.getPath();
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    static String getTargetPath(String targetDirectory, Path root, Path path) {
+        val relativePath = root.relativize(path).toString().replace(File.separatorChar, '/');
+        if (relativePath.isEmpty())
+            return targetDirectory;
+        else if (targetDirectory.isEmpty())
+            return relativePath;
+        else
+            return targetDirectory + "/" + relativePath;
+    }
 
-        val defaultCredential = new DefaultAzureCredentialBuilder().build();
+    private DataLakeFileSystemClient getClient(URI uri) {
+        if (client != null)
+            return client;
 
-        val serviceClient = new DataLakeServiceClientBuilder()
-            .credential(defaultCredential)
-            .endpoint(endpoint)
-            .buildClient();
+        val host = uri.getHost();
+        val fileSystemName = uri.getUserInfo();
+        val endpoint = System.getProperty("flowman.azure.endpoint", "https://" + host);
+        return clients.computeIfAbsent(endpoint + "/" + fileSystemName, k -> {
+            val builder = new DataLakeServiceClientBuilder().endpoint(endpoint);
+            val accountKey = System.getProperty("flowman.azure.accountKey");
+            if (accountKey != null)
+                builder.credential(new StorageSharedKeyCredential(System.getProperty("flowman.azure.accountName"), accountKey));
+            else
+                builder.credential(getCredential());
+            return builder.buildClient().getFileSystemClient(fileSystemName);
+        });
+    }
 
-        return serviceClient.getFileSystemClient(fileSystemName);
+    private static synchronized TokenCredential getCredential() {
+        if (credential == null) {
+            credential = new DefaultAzureCredentialBuilder().build();
+        }
+        return credential;
     }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2023 The Flowman Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.dimajix.flowman.maven.azure;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.storage.common.StorageSharedKeyCredential;
+import com.azure.storage.file.datalake.DataLakeFileSystemClient;
+import com.azure.storage.file.datalake.DataLakeServiceClientBuilder;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+public class AzureBlobFileSystemTest {
+    /**
+     * Minimal in-memory storage account, which answers the REST calls of the Data Lake client on the HTTP level. Only
+     * the existence of paths is tracked, and all requests are recorded as "METHOD path?query".
+     */
+    private static class InMemoryDataLake implements HttpClient {
+        final Map<String, Boolean> paths = new ConcurrentHashMap<>();
+        final List<String> requests = new CopyOnWriteArrayList<>();
+
+        DataLakeFileSystemClient client() {
+            val key = Base64.getEncoder().encodeToString("secret".getBytes(StandardCharsets.UTF_8));
+            return new DataLakeServiceClientBuilder()
+                .endpoint("https://account.dfs.core.windows.net")
+                .credential(new StorageSharedKeyCredential("account", key))
+                .httpClient(this)
+                .buildClient()
+                .getFileSystemClient("fs");
+        }
+
+        @Override
+        public Mono<HttpResponse> send(HttpRequest request) {
+            val url = request.getUrl();
+            val path = decode(url.getPath().substring("/fs/".length()));
+            val query = url.getQuery() != null ? "?" + url.getQuery() : "";
+            val method = request.getHttpMethod().toString();
+            requests.add(method + " " + path + query);
+
+            val headers = new HttpHeaders()
+                .set("ETag", "\"0x1\"")
+                .set("Last-Modified", "Mon, 02 Jan 2023 00:00:00 GMT");
+            switch (method) {
+                case "HEAD":
+                    if (!paths.containsKey(path))
+                        return Mono.just(new Response(request, 404, headers.set("x-ms-error-code", "BlobNotFound")));
+                    headers.set("Content-Length", "0");
+                    if (paths.get(path))
+                        headers.set("x-ms-meta-hdi_isfolder", "true");
+                    return Mono.just(new Response(request, 200, headers));
+                case "DELETE":
+                    if (paths.remove(path) == null)
+                        return Mono.just(new Response(request, 404, headers.set("x-ms-error-code", "PathNotFound")));
+                    paths.keySet().removeIf(p -> p.startsWith(path + "/"));
+                    return Mono.just(new Response(request, 200, headers));
+                case "PUT":
+                    val renameSource = request.getHeaders().getValue("x-ms-rename-source");
+                    if (renameSource != null) {
+                        val source = decode(renameSource.replaceAll("\\?.*", "").substring("/fs/".length()));
+                        requests.add("RENAME " + source + " -> " + path);
+                        paths.put(path, paths.remove(source));
+                    }
+                    else {
+                        paths.put(path, query.contains("resource=directory"));
+                    }
+                    return Mono.just(new Response(request, 201, headers));
+                case "PATCH":
+                    return Mono.just(new Response(request, query.contains("action=append") ? 202 : 200, headers));
+                default:
+                    return Mono.just(new Response(request, 200, headers));
+            }
+        }
+
+        private static String decode(String path) {
+            try {
+                return URLDecoder.decode(path, "UTF-8");
+            }
+            catch (IOException ex) {
+                throw new IllegalArgumentException(ex);
+            }
+        }
+    }
+
+    private static class Response extends HttpResponse {
+        private final int statusCode;
+        private final HttpHeaders headers;
+
+        Response(HttpRequest request, int statusCode, HttpHeaders headers) {
+            super(request);
+            this.statusCode = statusCode;
+            this.headers = headers;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+        @Override
+        public String getHeaderValue(String name) {
+            return headers.getValue(name);
+        }
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+        @Override
+        public Flux<ByteBuffer> getBody() {
+            return Flux.empty();
+        }
+        @Override
+        public Mono<byte[]> getBodyAsByteArray() {
+            return Mono.empty();
+        }
+        @Override
+        public Mono<String> getBodyAsString() {
+            return Mono.empty();
+        }
+        @Override
+        public Mono<String> getBodyAsString(Charset charset) {
+            return Mono.empty();
+        }
+    }
+
+    @Test
+    public void testPaths() throws Exception {
+        assertThat(AzureBlobFileSystem.getPath(new URI("abfs://fs@account.dfs.core.windows.net/deploy/flow/"))).isEqualTo("deploy/flow/");
+        assertThat(AzureBlobFileSystem.getPath(new URI("abfs://fs@account.dfs.core.windows.net/deploy/flow.jar"))).isEqualTo("deploy/flow.jar");
+        assertThat(AzureBlobFileSystem.getPath(new URI("abfs://fs@account.dfs.core.windows.net/"))).isEqualTo("");
+
+        val root = Paths.get("source");
+        assertThat(AzureBlobFileSystem.getTargetPath("deploy", root, root)).isEqualTo("deploy");
+        assertThat(AzureBlobFileSystem.getTargetPath("deploy", root, root.resolve("flows").resolve("a.yml"))).isEqualTo("deploy/flows/a.yml");
+        assertThat(AzureBlobFileSystem.getTargetPath("", root, root.resolve("a.yml"))).isEqualTo("a.yml");
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        val storage = new InMemoryDataLake();
+        storage.paths.put("deploy/releases/r1", true);
+        storage.paths.put("deploy/releases/r1/project.yml", false);
+        storage.paths.put("deploy/releases/r10", true);
+        storage.paths.put("deploy/flow.jar", false);
+
+        val fs = new AzureBlobFileSystem(storage.client());
+        fs.delete(new URI("abfs://fs@account.dfs.core.windows.net/deploy/releases/r1/"), true);
+        fs.delete(new URI("abfs://fs@account.dfs.core.windows.net/deploy/flow.jar"), false);
+        fs.delete(new URI("abfs://fs@account.dfs.core.windows.net/deploy/missing.jar"), false);
+
+        assertThat(storage.paths.keySet()).containsExactly("deploy/releases/r10");
+        assertThat(storage.requests.stream().filter(r -> r.startsWith("DELETE")).collect(Collectors.toList()))
+            .hasSize(2)
+            .anySatisfy(r -> assertThat(r).startsWith("DELETE deploy/releases/r1?").contains("recursive=true"))
+            .anySatisfy(r -> assertThat(r).startsWith("DELETE deploy/flow.jar"));
+
+        assertThatThrownBy(() -> fs.delete(new URI("abfs://fs@account.dfs.core.windows.net/"), true))
+            .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testLink() throws Exception {
+        val storage = new InMemoryDataLake();
+        storage.paths.put("deploy", true);
+        storage.paths.put("deploy/current", false);
+
+        val fs = new AzureBlobFileSystem(storage.client());
+        fs.link(new URI("abfs://fs@account.dfs.core.windows.net/deploy/current"), "releases/r1");
+
+        // The pointer is never written in place, but renamed over the existing pointer
+        assertThat(storage.requests.stream().filter(r -> r.matches("(PUT|PATCH) deploy/current(\\?.*)?")).collect(Collectors.toList()))
+            .hasSize(1);
+        val rename = storage.requests.stream().filter(r -> r.startsWith("RENAME")).collect(Collectors.toList());
+        assertThat(rename).hasSize(1);
+        assertThat(rename.get(0)).matches("RENAME deploy/current\\.tmp-[0-9a-f-]+ -> deploy/current");
+        assertThat(storage.paths.keySet()).containsExactlyInAnyOrder("deploy", "deploy/current");
+    }
+}